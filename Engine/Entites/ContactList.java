@@ -0,0 +1,113 @@
+package Engine.Entites;
+
+import Engine.Entites.Sprites.Sprite;
+import Engine.Tools.Rectangle;
+import Engine.Tools.Vector;
+
+import java.util.Arrays;
+
+/**
+ *  A list of sprite pairs that may overlap, resolved together in one pass by {@link #resolve()}:
+ *  the same result as calling {@code a.preventOverlap(b)} for each pair in the order they were added,
+ *  but without allocating a vector per contact.
+ *  <p>
+ *  It is a {@link SpatialHash.PairFunction}, so a broadphase can fill it directly:
+ *  <pre>
+ *  contacts.clear();
+ *  collisionGrid.forEachOverlappingPair(contacts);
+ *  contacts.resolve();
+ *  </pre>
+ *  The first sprite of each pair is the one that is moved.
+ */
+public class ContactList
+        implements SpatialHash.PairFunction
+{
+    /**
+     * the pairs: first[i] is moved out of second[i]
+     */
+    private Sprite[] first, second;
+    private int count;
+
+    /**
+     * receives each minimum translation vector
+     */
+    private final Vector shift = new Vector();
+
+    /**
+     * Create an empty list.
+     */
+    public ContactList()
+    {
+        first = new Sprite[64];
+        second = new Sprite[64];
+        count = 0;
+    }
+
+    /**
+     * Add a pair to resolve.
+     * @param a the sprite that is moved (unless its {@link Sprite#noOverLap} is set)
+     * @param b the sprite it is moved out of
+     */
+    public void add(Sprite a, Sprite b)
+    {
+        if (count == first.length)
+        {
+            first = Arrays.copyOf(first, count * 2);
+            second = Arrays.copyOf(second, count * 2);
+        }
+        first[count] = a;
+        second[count] = b;
+        count++;
+    }
+
+    /**
+     * Same as {@link #add(Sprite, Sprite)}, to pass this list to forEachOverlappingPair.
+     */
+    @Override
+    public void run(Sprite a, Sprite b)
+    {
+        add(a, b);
+    }
+
+    /**
+     * @return the number of pairs
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * Remove all pairs.
+     */
+    public void clear()
+    {
+        Arrays.fill(first, 0, count, null);
+        Arrays.fill(second, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     *  Move the first sprite of each overlapping pair out of the second one, by the
+     *  minimum translation vector, in the order the pairs were added
+     *  (a sprite moved by an earlier pair is checked at its new position).
+     *  @return the number of pairs that overlapped and were separated
+     */
+    public int resolve()
+    {
+        int resolved = 0;
+        for (int i = 0; i < count; i++)
+        {
+            Sprite a = first[i];
+            if (a.noOverLap)
+                continue;
+            Rectangle ra = a.getBoundary(), rb = second[i].getBoundary();
+            if (ra.overlaps(rb))
+            {
+                a.position.addVector(ra.getMinimumTranslationVector(rb, shift));
+                resolved++;
+            }
+        }
+        return resolved;
+    }
+}
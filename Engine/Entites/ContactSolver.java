@@ -0,0 +1,300 @@
+package Engine.Entites;
+
+import Engine.Entites.Sprites.Sprite;
+import Engine.Tools.Rectangle;
+
+import java.util.Arrays;
+
+/**
+ *  Separates many overlapping sprites together, instead of one {@link Sprite#preventOverlap(Sprite)} at a time.
+ *  The contacts of a frame are gathered first (for example from a broadphase), then {@link #solve()}
+ *  goes over all of them a few times (relaxation): each overlapping pair is pushed apart along its
+ *  shortest axis, shared by mass, until nothing overlaps or {@link #iterations} is reached.
+ *  Sprites with {@link Sprite#noOverLap} set are static: they push but are never moved.
+ *  <p>
+ *  Each contact remembers the axis it was separated along in the previous frame (warm starting),
+ *  and keeps it while it is not much longer than the shortest one, so a pile of sprites pressed
+ *  against a tower doesn't flip between pushing sideways and pushing back every frame.
+ *  <pre>
+ *  contacts.clear();
+ *  collisionGrid.forEachOverlappingPair(contacts);
+ *  contacts.solve();
+ *  </pre>
+ */
+public class ContactSolver
+        implements SpatialHash.PairFunction
+{
+    /**
+     * maximum number of passes over all contacts in {@link #solve()}
+     */
+    public int iterations = 4;
+
+    /**
+     * a contact keeps the axis of the previous frame while it is at most this many times
+     * the shortest separation; 1 disables warm starting
+     */
+    public double axisBias = 1.5;
+
+    /**
+     * axes along which a contact is separated: the first sprite moves right, left, down or up
+     */
+    private static final int RIGHT = 0, LEFT = 1, DOWN = 2, UP = 3, NONE = -1;
+
+    /**
+     * sprites are pushed this much further than touching, so rounding doesn't leave them overlapping
+     * by a tiny amount (which would be found and pushed again every frame)
+     */
+    private static final double MARGIN = 1e-6;
+
+    /**
+     * contacts of this frame, with the axis they are separated along (or NONE)
+     */
+    private Sprite[] first, second;
+    private int[] axis;
+    private int count;
+
+    /**
+     * contacts of the previous frame, and a hash table (open addressing) from pair to index
+     */
+    private Sprite[] previousFirst, previousSecond;
+    private int[] previousAxis;
+    private int previousCount;
+    private int[] previousTable;
+
+    /**
+     * overlap checks in the last {@link #solve()}
+     */
+    private int checkCount;
+
+    /**
+     * Create an empty solver.
+     */
+    public ContactSolver()
+    {
+        first = new Sprite[64];
+        second = new Sprite[64];
+        axis = new int[64];
+        previousFirst = new Sprite[64];
+        previousSecond = new Sprite[64];
+        previousAxis = new int[64];
+        previousTable = new int[128];
+        Arrays.fill(previousTable, -1);
+    }
+
+    /**
+     * Add a contact; pairs of two static sprites are ignored.
+     * @param a first sprite
+     * @param b second sprite
+     */
+    public void add(Sprite a, Sprite b)
+    {
+        if (a.noOverLap && b.noOverLap)
+            return;
+        if (count == first.length)
+        {
+            first = Arrays.copyOf(first, count * 2);
+            second = Arrays.copyOf(second, count * 2);
+            axis = Arrays.copyOf(axis, count * 2);
+        }
+        first[count] = a;
+        second[count] = b;
+        axis[count] = warmAxis(a, b);
+        count++;
+    }
+
+    /**
+     * Same as {@link #add(Sprite, Sprite)}, to pass this solver to forEachOverlappingPair.
+     */
+    @Override
+    public void run(Sprite a, Sprite b)
+    {
+        add(a, b);
+    }
+
+    /**
+     * @return the number of contacts of this frame
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * @return the number of overlap checks made by the last {@link #solve()}
+     */
+    public int getCheckCount()
+    {
+        return checkCount;
+    }
+
+    /**
+     * Start gathering the contacts of a new frame; the current ones are kept for warm starting.
+     */
+    public void clear()
+    {
+        // swap the arrays of this frame and the previous one
+        Sprite[] f = previousFirst, s = previousSecond;
+        int[] a = previousAxis;
+        previousFirst = first;
+        previousSecond = second;
+        previousAxis = axis;
+        previousCount = count;
+        first = f;
+        second = s;
+        axis = a;
+        Arrays.fill(first, null);
+        Arrays.fill(second, null);
+        count = 0;
+
+        int size = previousTable.length;
+        while (size < previousCount * 2)
+            size *= 2;
+        if (size != previousTable.length)
+            previousTable = new int[size];
+        Arrays.fill(previousTable, -1);
+        for (int i = 0; i < previousCount; i++)
+        {
+            int h = hash(previousFirst[i], previousSecond[i]);
+            while (previousTable[h] != -1)
+                h = (h + 1) & (previousTable.length - 1);
+            previousTable[h] = i;
+        }
+    }
+
+    /**
+     * Forget all contacts, also those kept for warm starting.
+     */
+    public void reset()
+    {
+        Arrays.fill(first, null);
+        Arrays.fill(second, null);
+        Arrays.fill(previousFirst, null);
+        Arrays.fill(previousSecond, null);
+        count = 0;
+        previousCount = 0;
+        Arrays.fill(previousTable, -1);
+    }
+
+    /**
+     *  Push the sprites of all contacts apart, in up to {@link #iterations} passes;
+     *  stops early after a pass in which no contact overlapped.
+     *  If the passes ran out, contacts with a static sprite are separated once more, so a crowd pressing
+     *  against a tower may still overlap itself, but is never left inside the tower.
+     *  @return the number of passes made
+     */
+    public int solve()
+    {
+        checkCount = 0;
+        int pass = 0;
+        int moved;
+        do
+        {
+            moved = 0;
+            for (int i = 0; i < count; i++)
+            {
+                if (separate(i))
+                    moved++;
+            }
+            checkCount += count;
+            pass++;
+        }
+        while (moved > 0 && pass < iterations);
+
+        if (moved > 0)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                if (first[i].noOverLap || second[i].noOverLap)
+                    separate(i);
+            }
+            checkCount += count;
+        }
+        return pass;
+    }
+
+    /**
+     * If the sprites of contact i overlap, move them apart along one axis, shared by mass.
+     * @return true if they overlapped
+     */
+    private boolean separate(int i)
+    {
+        Sprite a = first[i], b = second[i];
+        Rectangle ra = a.getBoundary(), rb = b.getBoundary();
+        if (!ra.overlaps(rb))
+            return false;
+
+        double right = rb.rightX - ra.leftX, left = rb.leftX - ra.rightX;
+        double down = rb.bottomY - ra.topY, up = rb.topY - ra.bottomY;
+
+        // the shortest shift; at equal lengths the same choice as Rectangle.getMinimumTranslationVector
+        int best = (-left < right) ? LEFT : RIGHT;
+        double shortest = Math.min(right, -left);
+        if (Math.min(down, -up) < shortest)
+        {
+            best = (-up < down) ? UP : DOWN;
+            shortest = Math.min(down, -up);
+        }
+        int previous = axis[i];
+        if (previous != NONE && previous != best && Math.abs(shift(previous, right, left, down, up)) <= shortest * axisBias)
+            best = previous;
+        axis[i] = best;
+
+        double d = shift(best, right, left, down, up);
+        d += (best == RIGHT || best == DOWN) ? MARGIN : -MARGIN;
+        double dx = (best == RIGHT || best == LEFT) ? d : 0;
+        double dy = (best == DOWN || best == UP) ? d : 0;
+
+        double inverseA = inverseMass(a), inverseB = inverseMass(b);
+        double shareA = inverseA / (inverseA + inverseB);
+        a.position.addToCoordinates(dx * shareA, dy * shareA);
+        b.position.addToCoordinates(-dx * (1 - shareA), -dy * (1 - shareA));
+        return true;
+    }
+
+    private static double shift(int axis, double right, double left, double down, double up)
+    {
+        switch (axis)
+        {
+            case RIGHT: return right;
+            case LEFT: return left;
+            case DOWN: return down;
+            default: return up;
+        }
+    }
+
+    /**
+     * @return 0 for static sprites, otherwise 1 / mass (sprites without a positive mass count as mass 1)
+     */
+    private static double inverseMass(Sprite s)
+    {
+        if (s.noOverLap)
+            return 0;
+        return (s.mass > 0) ? 1 / s.mass : 1;
+    }
+
+    /**
+     * @return the axis the pair was separated along in the previous frame (as seen from a), or NONE
+     */
+    private int warmAxis(Sprite a, Sprite b)
+    {
+        for (int h = hash(a, b); previousTable[h] != -1; h = (h + 1) & (previousTable.length - 1))
+        {
+            int p = previousTable[h];
+            if (previousFirst[p] == a && previousSecond[p] == b)
+                return previousAxis[p];
+            // the same pair the other way around: the opposite direction
+            if (previousFirst[p] == b && previousSecond[p] == a)
+                return (previousAxis[p] == NONE) ? NONE : previousAxis[p] ^ 1;
+        }
+        return NONE;
+    }
+
+    /**
+     * @return the slot of a pair in the previous frame's table, the same for (a, b) and (b, a)
+     */
+    private int hash(Sprite a, Sprite b)
+    {
+        int h = (System.identityHashCode(a) ^ System.identityHashCode(b)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (previousTable.length - 1);
+    }
+}
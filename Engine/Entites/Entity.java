@@ -1,5 +1,6 @@
 package Engine.Entites;
 
+import Engine.Tools.Camera;
 import javafx.scene.canvas.GraphicsContext;
 
 /**
@@ -8,12 +9,44 @@ import javafx.scene.canvas.GraphicsContext;
  */
 public abstract class Entity
 {
+    /**
+     * The group this Entity was last added to, and its index in that group's list;
+     * lets {@link EntityGroup} remove it without searching.
+     */
+    EntityGroup group;
+    int groupIndex = -1;
+
     /**
      * Render this Entity to a canvas. 
      * @param context GraphicsContext object that handles drawing to the canvas
      */
     public abstract void draw(GraphicsContext context);
 
+    /**
+     * Render this Entity to a canvas, blending between its state at the previous
+     * and at the current update. Entities that don't move can ignore alpha,
+     * which is what this default does.
+     * @param context GraphicsContext object that handles drawing to the canvas
+     * @param alpha interpolation factor from previous update (0) to current update (1)
+     */
+    public void draw(GraphicsContext context, double alpha)
+    {
+        draw(context);
+    }
+
+    /**
+     * Render this Entity to a canvas, as seen through a camera.
+     * This default ignores the camera, so the entity is drawn in canvas coordinates
+     * (which is what a {@link Engine.Tools.Label} on top of the game wants).
+     * @param context GraphicsContext object that handles drawing to the canvas
+     * @param alpha interpolation factor from previous update (0) to current update (1)
+     * @param camera the visible part of the world; null to draw without camera
+     */
+    public void draw(GraphicsContext context, double alpha, Camera camera)
+    {
+        draw(context, alpha);
+    }
+
     /**
      * Used to update individual sprites or entities within the game.
      * so this method is actually individual update method for entities.
@@ -21,4 +54,23 @@ public abstract class Entity
      * (typically approximately 1/60 second)
      */
     public abstract void update(double dt);
+
+    /**
+     * Remember the current state as the state of the previous update, which
+     * {@link #draw(GraphicsContext, double)} blends from. The game calls it for its groups at the
+     * start of each update, before game code moves anything, so every movement of the update is interpolated.
+     * This default does nothing (entities that don't move have nothing to remember).
+     */
+    public void savePreviousPosition()
+    {
+    }
+
+    /**
+     * Give this Entity back to the pool it came from, if any, so it can be reused.
+     * Called by groups with {@link EntityGroup#recycleRemoved} set, after removing it.
+     * This default does nothing (the Entity is left to the garbage collector).
+     */
+    public void recycle()
+    {
+    }
 }
\ No newline at end of file
@@ -1,11 +1,26 @@
 package Engine.Entites;
 
+import Engine.Entites.Sprites.ActionScheduler;
+import Engine.Entites.Sprites.Sprite;
+import Engine.Tools.Camera;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import javafx.scene.canvas.GraphicsContext;
 
 /**
  *  A collection of {@link Entity} objects.
- *
+ *  <p>
+ *  Adding and removing entities is deferred: changes are stored and applied together
+ *  at the start of the next {@link #update(double)} or {@link #draw(GraphicsContext)}
+ *  (or when {@link #flush()} is called). So it is always safe to add or remove entities
+ *  while looping over {@link #getList()}, and the list never has to be copied.
+ *  <p>
+ *  A sprite removed from its group (and not added to another one in the meantime) is also removed from its
+ *  {@link Engine.Entites.Sprites.ActionScheduler}, so the scheduler doesn't keep it alive and running its actions;
+ *  a sprite moved to a group flushed later applies its actions itself until it is added to a scheduler again.
  */
 public class EntityGroup extends Entity
 {
@@ -14,6 +29,87 @@ public class EntityGroup extends Entity
      */
     private ArrayList<Entity> list;
 
+    /**
+     *  Entities waiting to be added or removed, in the order the calls were made,
+     *  and whether each one is an addition (true) or a removal (false).
+     */
+    private ArrayList<Entity> pending;
+    private ArrayList<Boolean> pendingIsAdd;
+
+    /**
+     *  Number of times entities were added or removed (counted when applied by {@link #flush()}).
+     */
+    private int modificationCount;
+
+    /**
+     *  If true (the default), removing entities keeps the order of the remaining ones,
+     *  which is also the order they are drawn in. If false, the last entity is moved into the
+     *  place of a removed one, which is a little faster but changes the drawing order.
+     */
+    public boolean keepDrawOrder;
+
+    /**
+     *  If true, entities removed from this group are given back to their pool
+     *  ({@link Entity#recycle()}) once the removal is applied, unless they were added again
+     *  in the meantime. Only use this for groups that own their entities
+     *  (for example bullets obtained with {@link Sprite#obtain()}), and don't use
+     *  a removed entity afterwards.
+     */
+    public boolean recycleRemoved;
+
+    /**
+     *  Entities removed by the current flush, to take out of their action scheduler and to recycle.
+     */
+    private ArrayList<Entity> removed;
+
+    /**
+     *  If true, {@link #draw(GraphicsContext, double)} draws the sprites of this group sorted by image
+     *  (so sprites packed on the same {@link Engine.Entites.Sprites.TextureAtlas} page are drawn one
+     *  after another), and only changes the opacity of the canvas when it differs from the previous sprite.
+     *  Sprites with different images may then be drawn in a different order than in the list,
+     *  so only use this for groups where sprites don't overlap, or where the order doesn't matter.
+     *  Other entities (labels, nested groups, and subclasses of Sprite, which may override
+     *  {@link Sprite#draw(GraphicsContext)}) are drawn after the sprites, in list order.
+     */
+    public boolean batchDraw;
+
+    /**
+     *  Sort keys used by batched drawing: image identity in the high half, list index in the low half.
+     */
+    private long[] drawKeys;
+
+    /**
+     *  If true, {@link #update(double)} splits the entities into chunks
+     *  and updates the chunks on several threads at the same time.
+     *  <p>
+     *  Only use this for groups whose entities are independent during their update.
+     *  While a group updates in parallel, the update of an entity (including its
+     *  {@link Engine.Entites.Sprites.Physics}, {@link Engine.Entites.Sprites.Animation}
+     *  and {@link Engine.Entites.Sprites.Action} objects) may only read and change
+     *  that entity's own data. It must not:
+     *  <ul>
+     *  <li>read or change other sprites (no collision checks, no following a target),</li>
+     *  <li>add or remove entities to/from any group,</li>
+     *  <li>use Input, the canvas or other JavaFX objects,</li>
+     *  <li>share a mutable object with another entity of the group
+     *      (the same Action or Animation object added to two sprites, for example).</li>
+     *  </ul>
+     *  Interactions between entities belong in {@link Engine.Screen#update()},
+     *  which always runs on the game loop thread before the groups are updated.
+     */
+    public boolean parallel;
+
+    /**
+     *  Number of entities below which a parallel group is still updated on the calling thread
+     *  (splitting small groups costs more than it saves); also the size of the chunks.
+     */
+    public int parallelThreshold;
+
+    /**
+     *  Threads used for parallel updates of all groups.
+     */
+    public static ForkJoinPool updatePool = ForkJoinPool.commonPool();
+
 
     /**
      *  Initialize this object.
@@ -21,40 +117,163 @@ public class EntityGroup extends Entity
     public EntityGroup()
     {
         this.list = new ArrayList<Entity>();
+        this.pending = new ArrayList<Entity>();
+        this.pendingIsAdd = new ArrayList<Boolean>();
+        this.keepDrawOrder = true;
+        this.recycleRemoved = false;
+        this.removed = new ArrayList<Entity>();
+        this.batchDraw = false;
+        this.drawKeys = new long[0];
+        this.parallel = false;
+        this.parallelThreshold = 512;
     }
 
     /**
-     *  Add an {@link Entity} to this collection.
+     *  Add an {@link Entity} to this collection, at the next {@link #flush()}.
      *  @param e The Entity being added to this collection.
      */
     public void add(Entity e)
     {
-        this.list.add(e);
+        pending.add(e);
+        pendingIsAdd.add(Boolean.TRUE);
     }
 
     /**
-     *  Remove an {@link Entity} from this collection.
+     *  Remove an {@link Entity} from this collection, at the next {@link #flush()}.
      *  @param e The Entity being removed from this collection.
      */
     public void remove(Entity e)
     {
-        this.list.remove(e);
+        pending.add(e);
+        pendingIsAdd.add(Boolean.FALSE);
+    }
+
+    /**
+     *  Apply all additions and removals made since the last flush.
+     *  Called automatically at the start of {@link #update(double)} and {@link #draw(GraphicsContext)}.
+     */
+    public void flush()
+    {
+        int count = pending.size();
+        if (count == 0)
+            return;
+
+        boolean holes = false;
+        for (int i = 0; i < count; i++)
+        {
+            Entity e = pending.get(i);
+            if (pendingIsAdd.get(i))
+            {
+                e.group = this;
+                e.groupIndex = list.size();
+                list.add(e);
+            }
+            else if (removeNow(e))
+            {
+                holes |= keepDrawOrder;
+                removed.add(e);
+            }
+        }
+        pending.clear();
+        pendingIsAdd.clear();
+        modificationCount += count;
+
+        // close the holes left by removed entities, in one pass
+        if (holes)
+        {
+            int size = list.size();
+            int kept = 0;
+            for (int i = 0; i < size; i++)
+            {
+                Entity e = list.get(i);
+                if (e == null)
+                    continue;
+                if (e.group == this)
+                    e.groupIndex = kept;
+                list.set(kept++, e);
+            }
+            for (int i = size - 1; i >= kept; i--)
+                list.remove(i);
+        }
+
+        // entities added again after being removed are still in use
+        for (int i = 0; i < removed.size(); i++)
+        {
+            Entity e = removed.get(i);
+            if (e.group != null)
+                continue;
+            if (e instanceof Sprite)
+            {
+                Sprite s = (Sprite) e;
+                ActionScheduler scheduler = s.getActionScheduler();
+                if (scheduler != null)
+                    scheduler.remove(s);
+            }
+            if (recycleRemoved)
+                e.recycle();
+        }
+        removed.clear();
+    }
+
+    /**
+     *  Take an entity out of the list; when keeping the drawing order,
+     *  its place is set to null and closed later by flush.
+     *  @return true if the entity was in the list
+     */
+    private boolean removeNow(Entity e)
+    {
+        int index = (e.group == this) ? e.groupIndex : list.indexOf(e);
+        if (index < 0 || index >= list.size() || list.get(index) != e)
+            return false;
+
+        if (e.group == this)
+        {
+            e.group = null;
+            e.groupIndex = -1;
+        }
+
+        if (keepDrawOrder)
+        {
+            list.set(index, null);
+            return true;
+        }
+
+        // swap-remove: move the last entity into this place
+        Entity last = list.remove(list.size() - 1);
+        if (last != null && last != e)
+        {
+            list.set(index, last);
+            if (last.group == this)
+                last.groupIndex = index;
+        }
+        return true;
     }
 
     /**
-     *  Retrieve a (shallow) copy of this list.
-     *  Especially useful in for loops.
-     *  Avoids concurrent modification exceptions
-     *  when adding/removing from this collection during iteration.
-     * @return a copy of the list underlying this collection
+     *  Retrieve the list of entities in this collection (not a copy).
+     *  Changes made with {@link #add(Entity)} and {@link #remove(Entity)} only show up
+     *  after the next {@link #flush()}, so looping over this list while adding and removing
+     *  entities is safe. Don't change the list directly.
+     * @return the list underlying this collection
      */
     public ArrayList<Entity> getList()
     {
-        return new ArrayList<Entity>(list);
+        return list;
+    }
+
+    /**
+     * Determine how often entities were added to or removed from this collection,
+     * to notice changes (for example to redraw a cached layer).
+     * @return a number that grows with every applied addition or removal
+     */
+    public int getModificationCount()
+    {
+        return modificationCount;
     }
 
     /**
-     * Determine the number of entities in this collection.
+     * Determine the number of entities in this collection
+     * (not counting additions and removals waiting for the next {@link #flush()}).
      * @return the size of this collection
      */
     public int size()
@@ -62,13 +281,112 @@ public class EntityGroup extends Entity
         return this.list.size();
     }
 
+    /**
+     *  Count the entities in this collection and in nested collections
+     *  (nested collections themselves are not counted).
+     *  @return the number of entities
+     */
+    public int getEntityCount()
+    {
+        int count = 0;
+        int size = list.size();
+        for (int i = 0; i < size; i++)
+        {
+            Entity e = list.get(i);
+            if (e instanceof EntityGroup)
+                count += ((EntityGroup) e).getEntityCount();
+            else
+                count++;
+        }
+        return count;
+    }
+
     /**
      *  Render all Entity objects in this collection to a canvas.
      */
     public void draw(GraphicsContext context)
     {
-        for ( Entity e : this.list )
-            e.draw(context);
+        draw(context, 1);
+    }
+
+    /**
+     *  Render all Entity objects in this collection to a canvas,
+     *  interpolated between the previous and the current update.
+     */
+    public void draw(GraphicsContext context, double alpha)
+    {
+        draw(context, alpha, null);
+    }
+
+    /**
+     *  Render all Entity objects in this collection to a canvas, as seen through a camera;
+     *  sprites outside the view of the camera are skipped.
+     */
+    public void draw(GraphicsContext context, double alpha, Camera camera)
+    {
+        flush();
+
+        if (batchDraw)
+        {
+            drawBatched(context, alpha, camera);
+            return;
+        }
+
+        int size = list.size();
+        for (int i = 0; i < size; i++)
+            list.get(i).draw(context, alpha, camera);
+    }
+
+    /**
+     *  Draw visible sprites grouped by image, setting the opacity only when it changes;
+     *  then everything else.
+     */
+    private void drawBatched(GraphicsContext context, double alpha, Camera camera)
+    {
+        int size = list.size();
+        if (drawKeys.length < size)
+            drawKeys = new long[Math.max(size, drawKeys.length * 2)];
+
+        int sprites = 0;
+        for (int i = 0; i < size; i++)
+        {
+            Entity e = list.get(i);
+            if (e.getClass() == Sprite.class)
+            {
+                Sprite s = (Sprite) e;
+                if (!s.visible || s.texture == null || s.texture.image == null)
+                    continue;
+                if (camera != null && !s.isInView(camera, alpha))
+                {
+                    camera.culledCount++;
+                    continue;
+                }
+                drawKeys[sprites++] = ((long) System.identityHashCode(s.texture.image) << 32) | i;
+            }
+        }
+        Arrays.sort(drawKeys, 0, sprites);
+
+        // the opacity of the canvas is unknown before the first sprite
+        double currentOpacity = Double.NaN;
+        for (int k = 0; k < sprites; k++)
+        {
+            Sprite s = (Sprite) list.get((int) drawKeys[k]);
+            if (s.opacity != currentOpacity)
+            {
+                currentOpacity = s.opacity;
+                context.setGlobalAlpha(currentOpacity);
+            }
+            s.drawImage(context, alpha, camera);
+        }
+        if (camera != null)
+            camera.drawnCount += sprites;
+
+        for (int i = 0; i < size; i++)
+        {
+            Entity e = list.get(i);
+            if (e.getClass() != Sprite.class)
+                e.draw(context, alpha, camera);
+        }
     }
 
     /**
@@ -76,8 +394,65 @@ public class EntityGroup extends Entity
      */
     public void update(double dt)
     {
-        for ( Entity e : this.list )
-            e.update(dt);
+        flush();
+
+        int size = list.size();
+        if (parallel && size > parallelThreshold)
+        {
+            updatePool.invoke(new UpdateTask(list, 0, size, dt, Math.max(parallelThreshold, 1)));
+            return;
+        }
+
+        for (int i = 0; i < size; i++)
+            list.get(i).update(dt);
+    }
+
+    /**
+     *  Remember the current position of all entities in this collection (and nested collections),
+     *  so drawing blends from there; see {@link Entity#savePreviousPosition()}.
+     */
+    @Override
+    public void savePreviousPosition()
+    {
+        int size = list.size();
+        for (int i = 0; i < size; i++)
+            list.get(i).savePreviousPosition();
+    }
+
+    /**
+     *  Updates a range of the list; ranges larger than the chunk size are split in two halves
+     *  that are updated in parallel.
+     */
+    private static class UpdateTask extends RecursiveAction
+    {
+        private final ArrayList<Entity> list;
+        private final int from, to;
+        private final double dt;
+        private final int chunkSize;
+
+        UpdateTask(ArrayList<Entity> list, int from, int to, double dt, int chunkSize)
+        {
+            this.list = list;
+            this.from = from;
+            this.to = to;
+            this.dt = dt;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= chunkSize)
+            {
+                for (int i = from; i < to; i++)
+                    list.get(i).update(dt);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new UpdateTask(list, from, middle, dt, chunkSize),
+                      new UpdateTask(list, middle, to, dt, chunkSize));
+        }
     }
 
 }
@@ -0,0 +1,644 @@
+package Engine.Entites;
+
+import Engine.Entites.Sprites.Sprite;
+import Engine.Tools.Rectangle;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ *  A grid of square cells over the arena, marking the cells covered by obstacles (towers, walls, rivers),
+ *  used to steer many units towards the same target.
+ *  <p>
+ *  Instead of a path search per unit, a {@link FlowField} is computed once per target (one breadth-first search
+ *  over the grid) and shared by all units heading there: each cell stores the direction of the next cell
+ *  on a shortest path, so a unit only looks up the cell it stands on (see {@link Engine.Entites.Sprites.Action#followFlowField}).
+ *  Flow fields are cached per target; when an obstacle is added, removed or moved, only the cached fields
+ *  whose paths are affected by the changed cells are recomputed, the next time they are used.
+ *  At most {@link #maximumFlowFields} are cached: the least recently used one makes room for a new target.
+ *  A field removed from the cache that units still follow stays correct (it is computed again when obstacles
+ *  changed), and is taken back into the cache when its target is asked for again.
+ *  <pre>
+ *  navigation = new NavigationGrid(438, 750, 16);
+ *  navigation.rebuild(solidSpritesToRenderGroup);
+ *  troop.addAction(Action.followFlowField(navigation.getFlowField(tower), 40));
+ *  </pre>
+ */
+public class NavigationGrid
+{
+    /**
+     * size of the cells, and number of cells along x (columns) and y (rows)
+     */
+    public final double cellSize;
+    public final int columns, rows;
+
+    /**
+     * number of obstacles covering each cell (index = row * columns + column); a cell is blocked when it's above 0
+     */
+    private final int[] blockers;
+
+    /**
+     * cells covered by each obstacle: first column, first row, last column, last row
+     */
+    private final IdentityHashMap<Sprite, int[]> obstacles;
+
+    /**
+     * maximum number of cached flow fields; when a field for a new target is needed, the least recently
+     * used one is removed from the cache
+     */
+    public int maximumFlowFields = 32;
+
+    /**
+     * cached flow fields and their target cells (see {@link #key}), and a hash table (open addressing)
+     * from key to index, so looking up a field doesn't box its key
+     */
+    private FlowField[] flowFields;
+    private long[] flowFieldKeys;
+    private int flowFieldCount;
+    private int[] flowFieldTable;
+
+    /**
+     * counts flow field requests; each field remembers the count when it was last used
+     */
+    private int useClock;
+
+    /**
+     * fields removed from the cache, by key, while something else still uses them; only looked at
+     * when a target is not in the cache, so boxing the key doesn't matter
+     */
+    private final HashMap<Long, WeakReference<FlowField>> removedFlowFields;
+
+    /**
+     * counts changes of blocked cells; fields outside the cache compare it to know they must be computed again
+     */
+    private volatile int obstacleVersion;
+
+    /**
+     * neighbours of a cell: 4 sides, then 4 corners
+     */
+    private static final int[] NEIGHBOUR_X = { 1, -1, 0, 0, 1, -1, 1, -1 };
+    private static final int[] NEIGHBOUR_Y = { 0, 0, 1, -1, 1, 1, -1, -1 };
+    private static final double DIAGONAL = Math.sqrt(0.5);
+
+    /**
+     * Create a grid without obstacles.
+     * @param width width of the arena
+     * @param height height of the arena
+     * @param cellSize size of a cell; about the size of the smallest unit
+     */
+    public NavigationGrid(double width, double height, double cellSize)
+    {
+        this.cellSize = cellSize;
+        columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        blockers = new int[columns * rows];
+        obstacles = new IdentityHashMap<Sprite, int[]>();
+        flowFields = new FlowField[8];
+        flowFieldKeys = new long[8];
+        flowFieldTable = new int[16];
+        Arrays.fill(flowFieldTable, -1);
+        removedFlowFields = new HashMap<Long, WeakReference<FlowField>>();
+    }
+
+    /**
+     * Remove all obstacles, and add the sprites of a group (and its nested groups) as obstacles.
+     * @param group static sprites, usually the game's solidSpritesToRenderGroup
+     */
+    public void rebuild(EntityGroup group)
+    {
+        obstacles.clear();
+        Arrays.fill(blockers, 0);
+        // cached fields may be used by actions: keep them, computed again when next used
+        for (int i = 0; i < flowFieldCount; i++)
+            flowFields[i].dirty = true;
+        obstacleVersion++;
+        addObstacles(group);
+    }
+
+    /**
+     * Add the sprites of a group (and its nested groups) as obstacles.
+     * @param group sprites to add
+     */
+    public void addObstacles(EntityGroup group)
+    {
+        for (Entity e : group.getList())
+        {
+            if (e instanceof Sprite)
+                addObstacle((Sprite) e);
+            else if (e instanceof EntityGroup)
+                addObstacles((EntityGroup) e);
+        }
+    }
+
+    /**
+     * Block the cells covered by the boundary of a sprite.
+     * @param s the obstacle
+     */
+    public void addObstacle(Sprite s)
+    {
+        if (obstacles.containsKey(s))
+            return;
+        int[] range = cellRange(s.getBoundary());
+        obstacles.put(s, range);
+        changeBlockers(range, 1);
+    }
+
+    /**
+     * Free the cells of an obstacle (a destroyed tower, for example).
+     * @param s the obstacle
+     */
+    public void removeObstacle(Sprite s)
+    {
+        int[] range = obstacles.remove(s);
+        if (range != null)
+            changeBlockers(range, -1);
+    }
+
+    /**
+     * Block the cells where an obstacle is now, after it moved or changed size; cells it still covers don't change.
+     * @param s the obstacle
+     */
+    public void updateObstacle(Sprite s)
+    {
+        int[] range = obstacles.get(s);
+        if (range == null)
+        {
+            addObstacle(s);
+            return;
+        }
+        int[] now = cellRange(s.getBoundary());
+        if (Arrays.equals(range, now))
+            return;
+        // add first, so cells covered before and after never count as free
+        changeBlockers(now, 1);
+        changeBlockers(range, -1);
+        System.arraycopy(now, 0, range, 0, 4);
+    }
+
+    /**
+     * @param column column of the cell
+     * @param row row of the cell
+     * @return true if an obstacle covers the cell; cells outside the grid count as blocked
+     */
+    public boolean isBlocked(int column, int row)
+    {
+        if (column < 0 || row < 0 || column >= columns || row >= rows)
+            return true;
+        return blockers[row * columns + column] > 0;
+    }
+
+    /**
+     * @param x x-coordinate
+     * @return column of the cell containing x (the first or last column beyond the grid)
+     */
+    public int column(double x)
+    {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor(x / cellSize)));
+    }
+
+    /**
+     * @param y y-coordinate
+     * @return row of the cell containing y (the first or last row beyond the grid)
+     */
+    public int row(double y)
+    {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor(y / cellSize)));
+    }
+
+    /**
+     * The flow field towards a point, shared by all units heading there.
+     * @param x x-coordinate of the target
+     * @param y y-coordinate of the target
+     * @return the flow field towards the cell containing the point
+     */
+    public FlowField getFlowField(double x, double y)
+    {
+        int c = column(x), r = row(y);
+        return getFlowField(c, r, c, r);
+    }
+
+    /**
+     * The flow field towards a sprite (usually an obstacle, like a tower): units arrive next to any of its cells.
+     * @param target the target sprite, at its current position
+     * @return the flow field towards the cells covered by the target
+     */
+    public FlowField getFlowField(Sprite target)
+    {
+        int[] range = cellRange(target.getBoundary());
+        return getFlowField(range[0], range[1], range[2], range[3]);
+    }
+
+    /**
+     * @return the cached flow field towards a range of cells, created if there is none
+     */
+    private FlowField getFlowField(int firstColumn, int firstRow, int lastColumn, int lastRow)
+    {
+        long key = key(firstColumn, firstRow, lastColumn, lastRow);
+        useClock++;
+        for (int h = hash(key); flowFieldTable[h] != -1; h = (h + 1) & (flowFieldTable.length - 1))
+        {
+            int i = flowFieldTable[h];
+            if (flowFieldKeys[i] == key)
+            {
+                flowFields[i].lastUsed = useClock;
+                return flowFields[i];
+            }
+        }
+
+        // a removed field that is still followed is taken back, so there is only one field per target
+        FlowField field = null;
+        WeakReference<FlowField> removed = removedFlowFields.remove(key);
+        if (removed != null)
+            field = removed.get();
+        if (field != null)
+        {
+            if (field.computedVersion != obstacleVersion)
+                field.dirty = true;
+            field.cached = true;
+        }
+        else
+            field = new FlowField(this, firstColumn, firstRow, lastColumn, lastRow);
+
+        while (flowFieldCount >= Math.max(1, maximumFlowFields))
+            removeLeastRecentlyUsed();
+        if (flowFieldCount == flowFields.length)
+        {
+            flowFields = Arrays.copyOf(flowFields, flowFieldCount * 2);
+            flowFieldKeys = Arrays.copyOf(flowFieldKeys, flowFieldCount * 2);
+        }
+        field.lastUsed = useClock;
+        flowFields[flowFieldCount] = field;
+        flowFieldKeys[flowFieldCount] = key;
+        flowFieldCount++;
+        if (flowFieldCount * 2 > flowFieldTable.length)
+            rebuildTable();
+        else
+            insert(flowFieldCount - 1);
+        return field;
+    }
+
+    /**
+     * @return the number of cached flow fields
+     */
+    public int getFlowFieldCount()
+    {
+        return flowFieldCount;
+    }
+
+    /**
+     * Remove all cached flow fields; fields still used by actions keep working, and are computed
+     * again (completely) when obstacles changed.
+     */
+    public void clearFlowFields()
+    {
+        for (int i = 0; i < flowFieldCount; i++)
+            flowFields[i].cached = false;
+        Arrays.fill(flowFields, 0, flowFieldCount, null);
+        flowFieldCount = 0;
+        Arrays.fill(flowFieldTable, -1);
+        removedFlowFields.clear();
+    }
+
+    /**
+     * Remove the cached field that was requested or followed the longest time ago; the last field moves into its place.
+     * Units may still follow it: it is no longer told which cells changed, but computed again whenever
+     * obstacles changed, and kept (weakly) to be taken back when its target is asked for again.
+     */
+    private void removeLeastRecentlyUsed()
+    {
+        int oldest = 0;
+        for (int i = 1; i < flowFieldCount; i++)
+        {
+            // compared as ages, so the clock wrapping around doesn't matter
+            if (useClock - flowFields[i].lastUsed > useClock - flowFields[oldest].lastUsed)
+                oldest = i;
+        }
+        FlowField field = flowFields[oldest];
+        field.cached = false;
+        removedFlowFields.values().removeIf(r -> r.get() == null);
+        removedFlowFields.put(flowFieldKeys[oldest], new WeakReference<FlowField>(field));
+
+        int last = --flowFieldCount;
+        flowFields[oldest] = flowFields[last];
+        flowFieldKeys[oldest] = flowFieldKeys[last];
+        flowFields[last] = null;
+        rebuildTable();
+    }
+
+    /**
+     * Fill the hash table again with all cached fields, growing it to at least twice their number.
+     */
+    private void rebuildTable()
+    {
+        int size = flowFieldTable.length;
+        while (size < flowFieldCount * 2)
+            size *= 2;
+        if (size != flowFieldTable.length)
+            flowFieldTable = new int[size];
+        Arrays.fill(flowFieldTable, -1);
+        for (int i = 0; i < flowFieldCount; i++)
+            insert(i);
+    }
+
+    /**
+     * Put the index of a cached field in the first free slot from the hash of its key.
+     */
+    private void insert(int i)
+    {
+        int h = hash(flowFieldKeys[i]);
+        while (flowFieldTable[h] != -1)
+            h = (h + 1) & (flowFieldTable.length - 1);
+        flowFieldTable[h] = i;
+    }
+
+    /**
+     * @return the first slot to look at in the hash table for a key
+     */
+    private int hash(long key)
+    {
+        int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (flowFieldTable.length - 1);
+    }
+
+    /**
+     * @return a key for a range of cells (16 bits per value)
+     */
+    private static long key(int firstColumn, int firstRow, int lastColumn, int lastRow)
+    {
+        return ((long) firstColumn << 48) | ((long) firstRow << 32) | ((long) lastColumn << 16) | lastRow;
+    }
+
+    /**
+     * @return cells covered by a rectangle (touching a cell doesn't cover it), clamped to the grid
+     */
+    private int[] cellRange(Rectangle r)
+    {
+        int firstColumn = column(r.leftX), firstRow = row(r.topY);
+        int lastColumn = Math.max(firstColumn, column(Math.ceil(r.rightX / cellSize) * cellSize - cellSize));
+        int lastRow = Math.max(firstRow, row(Math.ceil(r.bottomY / cellSize) * cellSize - cellSize));
+        return new int[] { firstColumn, firstRow, lastColumn, lastRow };
+    }
+
+    /**
+     * Add an amount to the blocker counts of a range of cells, and tell the flow fields about cells
+     * that became blocked or free.
+     */
+    private void changeBlockers(int[] range, int amount)
+    {
+        for (int r = range[1]; r <= range[3]; r++)
+        {
+            for (int c = range[0]; c <= range[2]; c++)
+            {
+                int cell = r * columns + c;
+                boolean wasBlocked = blockers[cell] > 0;
+                blockers[cell] += amount;
+                boolean blocked = blockers[cell] > 0;
+                if (blocked != wasBlocked)
+                {
+                    obstacleVersion++;
+                    for (int i = 0; i < flowFieldCount; i++)
+                        flowFields[i].cellChanged(c, r, blocked);
+                }
+            }
+        }
+    }
+
+    /**
+     *  Directions towards one target for every cell of a {@link NavigationGrid}.
+     *  Computed when first used, and again after obstacles changed cells on its paths.
+     *  Lookups are safe from several threads (sprites updated in parallel).
+     */
+    public static final class FlowField
+    {
+        /**
+         * the grid, and the target cells
+         */
+        public final NavigationGrid grid;
+        public final int firstColumn, firstRow, lastColumn, lastRow;
+
+        /**
+         * steps from each cell to the target (-1 if it can't be reached),
+         * and the neighbour (0 to 7, -1 for none) to move to from each cell
+         */
+        private final int[] distance;
+        private final byte[] next;
+
+        /**
+         * true when obstacles changed since the last computation
+         */
+        private volatile boolean dirty;
+
+        /**
+         * number of times this field was computed
+         */
+        private int computeCount;
+
+        /**
+         * value of the grid's use clock when this field was last requested or followed, for removing
+         * the least recently used field from the cache
+         */
+        int lastUsed;
+
+        /**
+         * false once the grid removed this field from its cache, so it is no longer told about changed cells;
+         * the obstacle version of the grid when it was last computed
+         */
+        volatile boolean cached;
+        int computedVersion;
+
+        FlowField(NavigationGrid grid, int firstColumn, int firstRow, int lastColumn, int lastRow)
+        {
+            this.grid = grid;
+            this.firstColumn = firstColumn;
+            this.firstRow = firstRow;
+            this.lastColumn = lastColumn;
+            this.lastRow = lastRow;
+            distance = new int[grid.columns * grid.rows];
+            next = new byte[grid.columns * grid.rows];
+            dirty = true;
+            cached = true;
+        }
+
+        /**
+         * @param x x-coordinate
+         * @param y y-coordinate
+         * @return x-coordinate of the direction (length 1) to move in from this point, 0 if there is none
+         */
+        public double getDirectionX(double x, double y)
+        {
+            int n = next[cell(x, y)];
+            if (n < 0)
+                return 0;
+            return (n < 4) ? NEIGHBOUR_X[n] : NEIGHBOUR_X[n] * DIAGONAL;
+        }
+
+        /**
+         * @param x x-coordinate
+         * @param y y-coordinate
+         * @return y-coordinate of the direction (length 1) to move in from this point, 0 if there is none
+         */
+        public double getDirectionY(double x, double y)
+        {
+            int n = next[cell(x, y)];
+            if (n < 0)
+                return 0;
+            return (n < 4) ? NEIGHBOUR_Y[n] : NEIGHBOUR_Y[n] * DIAGONAL;
+        }
+
+        /**
+         * @param x x-coordinate
+         * @param y y-coordinate
+         * @return number of cells to the target from this point, or -1 if the target can't be reached
+         */
+        public int getDistance(double x, double y)
+        {
+            return distance[cell(x, y)];
+        }
+
+        /**
+         * @param x x-coordinate
+         * @param y y-coordinate
+         * @return true if this point is in a target cell, or next to a target cell covered by an obstacle
+         *         (as close as a unit can get to a tower)
+         */
+        public boolean hasArrived(double x, double y)
+        {
+            int cell = cell(x, y);
+            if (distance[cell] == 0)
+                return true;
+            int n = next[cell];
+            if (n < 0)
+                return false;
+            int c = cell % grid.columns + NEIGHBOUR_X[n], r = cell / grid.columns + NEIGHBOUR_Y[n];
+            return distance[r * grid.columns + c] == 0 && grid.isBlocked(c, r);
+        }
+
+        /**
+         * @return the number of times this field was computed
+         */
+        public int getComputeCount()
+        {
+            return computeCount;
+        }
+
+        /**
+         * @return the cell containing a point, after computing the field if needed
+         */
+        private int cell(double x, double y)
+        {
+            // outside the cache, any change of obstacles may have changed the paths
+            if (!cached && computedVersion != grid.obstacleVersion)
+                dirty = true;
+            if (dirty)
+                compute();
+            // only written when it changed, so units following the field in parallel rarely write to it
+            int clock = grid.useClock;
+            if (lastUsed != clock)
+                lastUsed = clock;
+            return grid.row(y) * grid.columns + grid.column(x);
+        }
+
+        private boolean isTarget(int c, int r)
+        {
+            return c >= firstColumn && c <= lastColumn && r >= firstRow && r <= lastRow;
+        }
+
+        /**
+         * Called by the grid when a cell became blocked or free; marks this field for computing again
+         * only if its paths can change.
+         */
+        void cellChanged(int c, int r, boolean blocked)
+        {
+            if (dirty || isTarget(c, r))
+                return;
+            int columns = grid.columns;
+            if (blocked)
+            {
+                // a cell that was on no path changes nothing
+                dirty = distance[r * columns + c] >= 0;
+                return;
+            }
+            // a freed cell matters if it's next to a cell that can reach the target
+            for (int i = 0; i < 4; i++)
+            {
+                int nc = c + NEIGHBOUR_X[i], nr = r + NEIGHBOUR_Y[i];
+                if (nc >= 0 && nr >= 0 && nc < columns && nr < grid.rows && distance[nr * columns + nc] >= 0)
+                {
+                    dirty = true;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Breadth-first search from the target cells (even blocked ones) through free cells,
+         * then the direction of each cell towards its nearest neighbour.
+         */
+        private synchronized void compute()
+        {
+            if (!dirty)
+                return;
+            computedVersion = grid.obstacleVersion;
+            int columns = grid.columns, rows = grid.rows;
+            Arrays.fill(distance, -1);
+            int[] queue = new int[distance.length];
+            int head = 0, tail = 0;
+            for (int r = firstRow; r <= lastRow; r++)
+            {
+                for (int c = firstColumn; c <= lastColumn; c++)
+                {
+                    distance[r * columns + c] = 0;
+                    queue[tail++] = r * columns + c;
+                }
+            }
+            while (head < tail)
+            {
+                int cell = queue[head++];
+                int c = cell % columns, r = cell / columns;
+                for (int i = 0; i < 4; i++)
+                {
+                    int nc = c + NEIGHBOUR_X[i], nr = r + NEIGHBOUR_Y[i];
+                    if (grid.isBlocked(nc, nr))
+                        continue;
+                    int neighbour = nr * columns + nc;
+                    if (distance[neighbour] < 0)
+                    {
+                        distance[neighbour] = distance[cell] + 1;
+                        queue[tail++] = neighbour;
+                    }
+                }
+            }
+
+            // each cell points to the neighbour closest to the target; corners only when both sides are free,
+            // so units don't cut the corners of obstacles. Cells covered by obstacles point out of them,
+            // for units pushed partly into one.
+            for (int cell = 0; cell < distance.length; cell++)
+            {
+                next[cell] = -1;
+                int own = distance[cell];
+                int c = cell % columns, r = cell / columns;
+                if (own == 0 || (own < 0 && !grid.isBlocked(c, r)))
+                    continue;
+                int best = (own < 0) ? Integer.MAX_VALUE : own;
+                int neighbours = (own < 0) ? 4 : 8;
+                for (int i = 0; i < neighbours; i++)
+                {
+                    int nc = c + NEIGHBOUR_X[i], nr = r + NEIGHBOUR_Y[i];
+                    if (nc < 0 || nr < 0 || nc >= columns || nr >= rows)
+                        continue;
+                    int d = distance[nr * columns + nc];
+                    if (d < 0 || d >= best)
+                        continue;
+                    if (i >= 4 && (distance[r * columns + nc] < 0 || distance[nr * columns + c] < 0))
+                        continue;
+                    best = d;
+                    next[cell] = (byte) i;
+                }
+            }
+            computeCount++;
+            dirty = false;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package Engine.Entites;
+
+import Engine.Entites.Sprites.Sprite;
+import Engine.Tools.Rectangle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ *  A uniform grid that sorts {@link Sprite} objects into cells by their boundary rectangle,
+ *  so collision checks only compare sprites that share a cell (broadphase),
+ *  instead of comparing every sprite with every other sprite.
+ *  The grid is unbounded: cells are hashed into a table, so sprites may be anywhere in the world.
+ *  Call {@link #update()} (or {@link #rebuild(EntityGroup)}) once per update,
+ *  after sprites have moved and before checking for collisions.
+ */
+public class SpatialHash
+{
+    /**
+     * Code to run on each pair of overlapping sprites found by {@link #forEachOverlappingPair(PairFunction)}.
+     */
+    public interface PairFunction
+    {
+        /**
+         * @param a first sprite of the pair
+         * @param b second sprite of the pair; its boundary overlaps the boundary of a
+         */
+        void run(Sprite a, Sprite b);
+    }
+
+    /**
+     * Width and height of each (square) cell. Something close to the size
+     * of a typical sprite works best.
+     */
+    public double cellSize;
+
+    /**
+     * Sprites stored in the grid, and their cell ranges (first and last cell along each axis).
+     */
+    private Sprite[] sprites;
+    private int[] firstCellX, firstCellY, lastCellX, lastCellY;
+    private int spriteCount;
+
+    /**
+     * One entry per (sprite, cell) combination, sorted by hash bucket.
+     * bucketStart[h] .. bucketStart[h+1] are the entries of bucket h.
+     */
+    private int[] entrySprite, entryCellX, entryCellY;
+    private int[] bucketStart;
+    private int bucketMask;
+
+    /**
+     * Initialize an empty grid.
+     * @param cellSize width and height of each cell
+     */
+    public SpatialHash(double cellSize)
+    {
+        this.cellSize = cellSize;
+        sprites = new Sprite[64];
+        firstCellX = new int[64];
+        firstCellY = new int[64];
+        lastCellX = new int[64];
+        lastCellY = new int[64];
+        entrySprite = new int[128];
+        entryCellX = new int[128];
+        entryCellY = new int[128];
+        bucketStart = new int[257];
+        bucketMask = 255;
+    }
+
+    /**
+     *  Add a Sprite to the grid; it's placed in cells at the next {@link #update()}.
+     *  @param s the Sprite to add
+     */
+    public void add(Sprite s)
+    {
+        if (spriteCount == sprites.length)
+        {
+            int n = spriteCount * 2;
+            sprites = Arrays.copyOf(sprites, n);
+            firstCellX = Arrays.copyOf(firstCellX, n);
+            firstCellY = Arrays.copyOf(firstCellY, n);
+            lastCellX = Arrays.copyOf(lastCellX, n);
+            lastCellY = Arrays.copyOf(lastCellY, n);
+        }
+        sprites[spriteCount] = s;
+        // not in any cell until next update
+        firstCellX[spriteCount] = 1;
+        lastCellX[spriteCount] = 0;
+        firstCellY[spriteCount] = 1;
+        lastCellY[spriteCount] = 0;
+        spriteCount++;
+    }
+
+    /**
+     *  Add every Sprite in a group (and its nested groups) to the grid.
+     *  @param group the group whose sprites are added
+     */
+    public void addAll(EntityGroup group)
+    {
+        for (Entity e : group.getList())
+        {
+            if (e instanceof Sprite)
+                add((Sprite) e);
+            else if (e instanceof EntityGroup)
+                addAll((EntityGroup) e);
+        }
+    }
+
+    /**
+     *  Remove a Sprite from the grid.
+     *  The grid reports no overlaps until the next {@link #update()}.
+     *  @param s the Sprite to remove
+     */
+    public void remove(Sprite s)
+    {
+        for (int i = 0; i < spriteCount; i++)
+        {
+            if (sprites[i] == s)
+            {
+                spriteCount--;
+                sprites[i] = sprites[spriteCount];
+                sprites[spriteCount] = null;
+                // cell entries refer to sprites by index, which just changed
+                Arrays.fill(bucketStart, 0);
+                return;
+            }
+        }
+    }
+
+    /**
+     *  Remove all sprites from the grid.
+     */
+    public void clear()
+    {
+        Arrays.fill(sprites, 0, spriteCount, null);
+        spriteCount = 0;
+        Arrays.fill(bucketStart, 0);
+    }
+
+    /**
+     * Determine the number of sprites stored in the grid.
+     * @return the number of sprites
+     */
+    public int size()
+    {
+        return spriteCount;
+    }
+
+    /**
+     *  Replace the content of the grid with the sprites of a group, and place them in cells.
+     *  @param group the group whose sprites (including nested groups) are stored
+     */
+    public void rebuild(EntityGroup group)
+    {
+        clear();
+        addAll(group);
+        update();
+    }
+
+    /**
+     *  Replace the content of the grid with the sprites of two groups, and place them in cells.
+     *  @param first the first group whose sprites are stored
+     *  @param second the second group whose sprites are stored
+     */
+    public void rebuild(EntityGroup first, EntityGroup second)
+    {
+        clear();
+        addAll(first);
+        addAll(second);
+        update();
+    }
+
+    /**
+     *  Place every stored sprite in the cells its boundary covers right now.
+     *  Runs in linear time and (after the first few calls) without allocating.
+     */
+    public void update()
+    {
+        // find cell ranges and count entries
+        int entryCount = 0;
+        for (int i = 0; i < spriteCount; i++)
+        {
+            Rectangle r = sprites[i].getBoundary();
+            firstCellX[i] = cell(r.leftX);
+            firstCellY[i] = cell(r.topY);
+            lastCellX[i] = cell(r.rightX);
+            lastCellY[i] = cell(r.bottomY);
+            entryCount += (lastCellX[i] - firstCellX[i] + 1) * (lastCellY[i] - firstCellY[i] + 1);
+        }
+
+        if (entrySprite.length < entryCount)
+        {
+            int n = Math.max(entryCount, entrySprite.length * 2);
+            entrySprite = new int[n];
+            entryCellX = new int[n];
+            entryCellY = new int[n];
+        }
+        // keep buckets at least twice as many as entries, so they stay short
+        if (bucketMask + 1 < entryCount * 2)
+        {
+            int buckets = Integer.highestOneBit(entryCount * 2 - 1) << 1;
+            bucketStart = new int[buckets + 1];
+            bucketMask = buckets - 1;
+        }
+        else
+            Arrays.fill(bucketStart, 0);
+
+        // counting sort of entries by bucket: count ...
+        for (int i = 0; i < spriteCount; i++)
+            for (int cy = firstCellY[i]; cy <= lastCellY[i]; cy++)
+                for (int cx = firstCellX[i]; cx <= lastCellX[i]; cx++)
+                    bucketStart[bucket(cx, cy) + 1]++;
+
+        // ... turn counts into start positions ...
+        for (int h = 0; h <= bucketMask; h++)
+            bucketStart[h + 1] += bucketStart[h];
+
+        // ... and fill (bucketStart[h] is used as fill pointer, then shifted back)
+        for (int i = 0; i < spriteCount; i++)
+            for (int cy = firstCellY[i]; cy <= lastCellY[i]; cy++)
+                for (int cx = firstCellX[i]; cx <= lastCellX[i]; cx++)
+                {
+                    int e = bucketStart[bucket(cx, cy)]++;
+                    entrySprite[e] = i;
+                    entryCellX[e] = cx;
+                    entryCellY[e] = cy;
+                }
+        for (int h = bucketMask; h > 0; h--)
+            bucketStart[h] = bucketStart[h - 1];
+        bucketStart[0] = 0;
+    }
+
+    /**
+     *  Find all stored sprites whose boundary overlaps the boundary of a sprite.
+     *  Uses the cells as of the last {@link #update()}.
+     *  @param s the sprite to check; it doesn't need to be stored in the grid
+     *  @param result list that overlapping sprites are added to (s itself is never added)
+     *  @return result, for convenience
+     */
+    public ArrayList<Sprite> queryOverlapping(Sprite s, ArrayList<Sprite> result)
+    {
+        Rectangle r = s.getBoundary();
+        int x0 = cell(r.leftX), y0 = cell(r.topY);
+        int x1 = cell(r.rightX), y1 = cell(r.bottomY);
+
+        for (int cy = y0; cy <= y1; cy++)
+            for (int cx = x0; cx <= x1; cx++)
+            {
+                int h = bucket(cx, cy);
+                for (int e = bucketStart[h]; e < bucketStart[h + 1]; e++)
+                {
+                    // other cells hashed into the same bucket
+                    if (entryCellX[e] != cx || entryCellY[e] != cy)
+                        continue;
+                    int j = entrySprite[e];
+                    Sprite other = sprites[j];
+                    // report each sprite once: only in the first cell both share
+                    if (other == s
+                            || cx != Math.max(x0, firstCellX[j])
+                            || cy != Math.max(y0, firstCellY[j]))
+                        continue;
+                    if (r.overlaps(other.boundary))
+                        result.add(other);
+                }
+            }
+        return result;
+    }
+
+    /**
+     *  Find all stored sprites whose boundary overlaps the boundary of a sprite.
+     *  @param s the sprite to check
+     *  @return a new list of the overlapping sprites
+     */
+    public ArrayList<Sprite> queryOverlapping(Sprite s)
+    {
+        return queryOverlapping(s, new ArrayList<Sprite>());
+    }
+
+    /**
+     *  Run code on every pair of stored sprites whose boundaries overlap.
+     *  Each pair is visited exactly once. Uses the cells as of the last {@link #update()},
+     *  so moving sprites inside f (for example with {@link Sprite#preventOverlap(Sprite)})
+     *  does not change which pairs are visited.
+     *  @param f code to run on each overlapping pair
+     */
+    public void forEachOverlappingPair(PairFunction f)
+    {
+        for (int h = 0; h <= bucketMask; h++)
+        {
+            int end = bucketStart[h + 1];
+            for (int e1 = bucketStart[h]; e1 < end; e1++)
+            {
+                int i = entrySprite[e1];
+                int cx = entryCellX[e1], cy = entryCellY[e1];
+                for (int e2 = e1 + 1; e2 < end; e2++)
+                {
+                    if (entryCellX[e2] != cx || entryCellY[e2] != cy)
+                        continue;
+                    int j = entrySprite[e2];
+                    // visit each pair once: only in the first cell both share
+                    if (cx != Math.max(firstCellX[i], firstCellX[j])
+                            || cy != Math.max(firstCellY[i], firstCellY[j]))
+                        continue;
+                    Sprite a = sprites[i];
+                    Sprite b = sprites[j];
+                    if (a.boundary.overlaps(b.boundary))
+                        f.run(a, b);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return index of the cell containing a coordinate
+     */
+    private int cell(double coordinate)
+    {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    /**
+     * @return bucket that a cell is hashed into
+     */
+    private int bucket(int cx, int cy)
+    {
+        return ((cx * 73856093) ^ (cy * 19349663)) & bucketMask;
+    }
+}
@@ -1,6 +1,7 @@
 package Engine.Entites.Sprites;
 
-import Engine.Tools.Vector;
+import Engine.Entites.NavigationGrid;
+import Engine.Tools.Pool;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -29,6 +30,17 @@ public class Action
         boolean run(Sprite target, double deltaTime, double totalTime);
     }
 
+    /**
+     * Code to run when an action has finished on a sprite; see {@link #setOnComplete(Callback)}.
+     */
+    public interface Callback
+    {
+        /**
+         * @param target the sprite the action was applied to
+         */
+        void run(Sprite target);
+    }
+
     /**
      * each Action is going to store bunch of code in function.
      */
@@ -38,6 +50,95 @@ public class Action
      */
     public double totalTime;
 
+    // kinds of built-in actions; their values are stored in fields instead of a Function,
+    // so they don't need a lambda and can be reused through the pool.
+    public static final int CUSTOM = 0;
+    public static final int MOVE_BY = 1;
+    public static final int ROTATE_BY = 2;
+    public static final int FADE_OUT = 3;
+    public static final int DELAY = 4;
+
+    // kinds of meta actions, which apply their children (see repeatMetaAct, foreverMetaAct and sequenceMetaAct)
+    public static final int SEQUENCE = 5;
+    public static final int REPEAT = 6;
+    public static final int FOREVER = 7;
+    public static final int PARALLEL = 8;
+
+    // kinds of tweens, which change a property from its value at the start to an end value, along an easing curve
+    public static final int TWEEN_TO = 9;
+    public static final int TWEEN_BY = 10;
+
+    // moves along a flow field of a NavigationGrid at a constant speed (valueX), until the target is reached
+    public static final int FOLLOW_FLOW_FIELD = 11;
+
+    /**
+     * kind of this action; {@link #CUSTOM} runs {@link #function} (or an overridden apply method).
+     */
+    public int type;
+
+    /**
+     * values of a built-in action: amount to move (valueX, valueY) or rotate (valueX),
+     * and how long the action takes.
+     */
+    public double valueX, valueY, duration;
+
+    /**
+     * actions applied by a meta action (one child for repeat and forever), and how many times a repeat runs its child.
+     * Used by {@link ActionProgram#compile(Action)} to see the structure of an action.
+     */
+    public Action[] children;
+    public int repeatCount;
+
+    /**
+     * progress of a meta action: child being applied (sequence), times the child has finished (repeat)
+     * and children that are done (parallel)
+     */
+    private int currentIndex, finishedTimes;
+    private boolean[] childFinished;
+
+    /**
+     * property changed by a tween, and the curve it follows (see {@link #tweenTo})
+     */
+    public TweenProperty property;
+    public Easing easing;
+
+    /**
+     * value of the property when a tween started and the value it ends at
+     */
+    private double tweenStart, tweenEnd;
+    private boolean tweenStarted;
+
+    /**
+     * flow field followed by {@link #followFlowField}
+     */
+    public NavigationGrid.FlowField flowField;
+
+    /**
+     * name used to find or cancel this action on a sprite ({@link Sprite#cancelAction(String)}); may be null
+     */
+    public String name;
+
+    /**
+     * code run by the sprite once this action has finished (not when it is cancelled); may be null
+     */
+    public Callback onComplete;
+
+    /**
+     * set by {@link Sprite#cancelAction(Action)}; the sprite removes the action at its next update
+     */
+    boolean cancelled;
+
+    /**
+     * true if this action came from {@link #pool}; it's then given back automatically
+     * once a sprite has finished it (or when that sprite is recycled).
+     */
+    public boolean pooled;
+
+    /**
+     * Shared pool of built-in actions; see {@link #obtainMoveBy(double, double, double)} and similar methods.
+     */
+    public static final Pool<Action> pool = new Pool<Action>(Action::new, Action::clear, 1024);
+
     /**
      * default constructor.
      * We can use this and override the apply(); if we wish not to use Function interface.
@@ -61,6 +162,19 @@ public class Action
         totalTime = 0;
     }
 
+    /**
+     * constructor of built-in actions.
+     * @param type kind of action ({@link #MOVE_BY}, {@link #ROTATE_BY}, {@link #FADE_OUT} or {@link #DELAY})
+     * @param valueX amount along x (or rotation)
+     * @param valueY amount along y
+     * @param duration how long the action takes
+     */
+    public Action(int type, double valueX, double valueY, double duration)
+    {
+        this();
+        set(type, valueX, valueY, duration);
+    }
+
     /**
      * activating the run(); that is stored in Function.
      * Action is going to apply itself by running function.run(Sprite,double,double); on the "target" Sprite.
@@ -72,7 +186,148 @@ public class Action
     {
         totalTime += deltaTime;
 
-        return function.run(target, deltaTime, totalTime);
+        switch (type)
+        {
+            case MOVE_BY:
+                //speed * elapsedTime(since lastFrame) = how much we need to move in this frame.
+                target.moveBy(valueX / duration * deltaTime, valueY / duration * deltaTime);
+                return (totalTime >= duration); // if the action is running for longer than its duration,
+                                                // we know that it's done and will return true
+            case ROTATE_BY:
+                // rotationSpeed * elapsedTime(since lastFrame) = how much to rotate in this new frame
+                target.rotateBy(valueX / duration * deltaTime);
+                return (totalTime >= duration);
+            case FADE_OUT:
+                target.opacity -= (1 / duration * deltaTime); //how much to decrement opacity in each frame
+                //avoiding errors
+                if (target.opacity < 0)
+                    target.opacity = 0;
+                return (totalTime >= duration);
+            case DELAY:
+                return (totalTime >= duration);
+            case SEQUENCE:
+                // apply the current action; once it's done, the next one starts at the next update
+                if (children[currentIndex].apply(target, deltaTime))
+                    currentIndex += 1;
+                return (currentIndex == children.length); // true once all the actions are done
+            case REPEAT:
+                if (children[0].apply(target, deltaTime))
+                {
+                    finishedTimes += 1;
+                    children[0].reset();
+                }
+                return (finishedTimes == repeatCount);
+            case FOREVER:
+                if (children[0].apply(target, deltaTime))
+                    children[0].reset();
+                return false; //no removing then.
+            case TWEEN_TO:
+            case TWEEN_BY:
+            {
+                // start from wherever the property is when the tween is first applied
+                if (!tweenStarted)
+                {
+                    tweenStarted = true;
+                    tweenStart = property.get(target);
+                    tweenEnd = (type == TWEEN_BY) ? tweenStart + valueX : valueX;
+                }
+                // position follows from the elapsed part of the duration, so nothing adds up,
+                // and the end value is set exactly
+                if (totalTime >= duration)
+                {
+                    property.set(target, tweenEnd);
+                    return true;
+                }
+                property.set(target, tweenStart + (tweenEnd - tweenStart) * easing.apply(totalTime / duration));
+                return false;
+            }
+            case FOLLOW_FLOW_FIELD:
+            {
+                // one lookup in the shared field, for the cell under the center of the sprite
+                double centerX = target.position.x + target.width / 2;
+                double centerY = target.position.y + target.height / 2;
+                if (flowField.hasArrived(centerX, centerY))
+                    return true;
+                double dx = flowField.getDirectionX(centerX, centerY);
+                double dy = flowField.getDirectionY(centerX, centerY);
+                // no direction: the target can't be reached now; wait until obstacles change
+                if (dx != 0 || dy != 0)
+                    target.moveBy(dx * valueX * deltaTime, dy * valueX * deltaTime);
+                return false;
+            }
+            case PARALLEL:
+            {
+                // apply every action that is not done yet; done when all of them are
+                boolean allFinished = true;
+                for (int i = 0; i < children.length; i++)
+                {
+                    if (!childFinished[i])
+                        childFinished[i] = children[i].apply(target, deltaTime);
+                    allFinished &= childFinished[i];
+                }
+                return allFinished;
+            }
+            default:
+                return function.run(target, deltaTime, totalTime);
+        }
+    }
+
+    /**
+     * Give this action back to {@link #pool} if it came from there; it must not be used afterwards.
+     */
+    public void free()
+    {
+        if (!pooled)
+            return;
+        // cleared first, so a second call can't put it in the pool twice (even when the pool was full)
+        pooled = false;
+        pool.release(this);
+    }
+
+    /**
+     * Set the kind and values of this action, and start it over.
+     */
+    private void set(int type, double valueX, double valueY, double duration)
+    {
+        this.type = type;
+        this.valueX = valueX;
+        this.valueY = valueY;
+        this.duration = duration;
+        this.totalTime = 0;
+    }
+
+    /**
+     * Put a pooled action back in its initial state.
+     */
+    private static void clear(Action a)
+    {
+        a.set(CUSTOM, 0, 0, 0);
+        a.function = null;
+        a.children = null;
+        a.repeatCount = 0;
+        a.currentIndex = 0;
+        a.finishedTimes = 0;
+        a.childFinished = null;
+        a.property = null;
+        a.easing = null;
+        a.tweenStarted = false;
+        a.flowField = null;
+        a.name = null;
+        a.onComplete = null;
+        a.cancelled = false;
+        a.pooled = false;
+        a.actionQueue.clear();
+    }
+
+    /**
+     * Retrieve a built-in action from the pool.
+     */
+    private static Action obtain(int type, double valueX, double valueY, double duration)
+    {
+        Action a = pool.acquire();
+        a.set(type, valueX, valueY, duration);
+        a.pooled = true;
+        return a;
     }
 
     /**
@@ -81,6 +336,39 @@ public class Action
     public void reset()
     {
         totalTime = 0;
+
+        /*a meta action starts over with its children: a sequence from its first action,
+        a repeat with no finished times*/
+        if (children != null)
+            for (Action child : children)
+                child.reset();
+        currentIndex = 0;
+        finishedTimes = 0;
+        if (childFinished != null)
+            Arrays.fill(childFinished, false);
+        tweenStarted = false;
+    }
+
+    /**
+     * Give this action a name, to find or cancel it later on a sprite.
+     * @param name name of the action
+     * @return this action, so calls can be chained
+     */
+    public Action setName(String name)
+    {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * Set code to run when this action has finished on a sprite.
+     * @param callback code to run; receives the sprite
+     * @return this action, so calls can be chained
+     */
+    public Action setOnComplete(Callback callback)
+    {
+        this.onComplete = callback;
+        return this;
     }
     //-------------------------------------------------------------------------- Normal Actions ::
     // static methods to create Action object :
@@ -97,17 +385,17 @@ public class Action
     public static Action moveByAct(
             double deltaX, double deltaY, double duration)
     {
-        return new Action(
-                (Sprite target, double dt, double tt) ->
-                {
+        return new Action(MOVE_BY, deltaX, deltaY, duration);
+    }
 
-                    target.moveBy(deltaX / duration * dt, //speed * elapsedTime(since lastFrame) = how much we need to move in this frame.
-                            deltaY / duration * dt);
-                    //System.out.println("tt = " + tt + "    duration " + duration);
-                    return (tt >= duration); // if the run method is running for longer than the duration of it,
-                                             // we now that its done and will return true
-                }
-        );
+    /**
+     * Like {@link #moveByAct(double, double, double)}, but the action comes from {@link #pool}
+     * and goes back there once the sprite running it has finished it.
+     * Don't keep a reference to it, and don't put it in a meta action.
+     */
+    public static Action obtainMoveBy(double deltaX, double deltaY, double duration)
+    {
+        return obtain(MOVE_BY, deltaX, deltaY, duration);
     }
 
     /**
@@ -118,17 +406,15 @@ public class Action
      */
     public static Action rotateByAct(double deltaA, double duration)
     {
+        return new Action(ROTATE_BY, deltaA, 0, duration);
+    }
 
-        return new Action(
-                (Sprite target, double dt, double tt) ->
-                {
-                    target.rotateBy(deltaA / duration * dt); // rotationSpeed * elapsedTime(since lastFrame) =
-                                                                 // how much to rotate in this new frame
-
-                    return (tt >= duration); // if the run method is running for longer than the duration of it,
-                                             // we now that its done and will return true
-                }
-        );
+    /**
+     * Pooled version of {@link #rotateByAct(double, double)}; see {@link #obtainMoveBy(double, double, double)}.
+     */
+    public static Action obtainRotateBy(double deltaA, double duration)
+    {
+        return obtain(ROTATE_BY, deltaA, 0, duration);
     }
 
     /**
@@ -138,16 +424,15 @@ public class Action
      */
     public static Action fadeOut(double duration)
     {
-        return new Action(
-                (Sprite target, double dt, double tt) ->
-                {
-                    target.opacity -= (1 / duration * dt); //how much to decrement opacity in each frame
-                    //avoiding errors
-                    if (target.opacity < 0)
-                        target.opacity = 0;
-                    return (tt >= duration);
-                }
-        );
+        return new Action(FADE_OUT, 0, 0, duration);
+    }
+
+    /**
+     * Pooled version of {@link #fadeOut(double)}; see {@link #obtainMoveBy(double, double, double)}.
+     */
+    public static Action obtainFadeOut(double duration)
+    {
+        return obtain(FADE_OUT, 0, 0, duration);
     }
 
     /**
@@ -157,12 +442,81 @@ public class Action
      */
     public static Action delay(double duration)
     {
-        return new Action(
-                (Sprite target, double dt, double tt) ->
-                {
-                    return (tt >= duration);
-                }
-        );
+        return new Action(DELAY, 0, 0, duration);
+    }
+
+    /**
+     * Pooled version of {@link #delay(double)}; see {@link #obtainMoveBy(double, double, double)}.
+     */
+    public static Action obtainDelay(double duration)
+    {
+        return obtain(DELAY, 0, 0, duration);
+    }
+
+    /**
+     * Change a property of the sprite to a value, following an easing curve.
+     * The property's value when the action starts is where the change starts from,
+     * and it ends at exactly the given value.
+     * @param property the property to change (for example {@link TweenProperty#X})
+     * @param to value at the end
+     * @param duration how long the change takes
+     * @param easing how the change is spread over the duration (for example {@link Easing#QUAD_OUT})
+     * @return the action
+     */
+    public static Action tweenTo(TweenProperty property, double to, double duration, Easing easing)
+    {
+        Action tween = new Action(TWEEN_TO, to, 0, duration);
+        tween.property = property;
+        tween.easing = easing;
+        return tween;
+    }
+
+    /**
+     * Change a property of the sprite by an amount, following an easing curve;
+     * like {@link #tweenTo}, but the end value is the start value plus the amount.
+     * @param property the property to change
+     * @param by amount of change
+     * @param duration how long the change takes
+     * @param easing how the change is spread over the duration
+     * @return the action
+     */
+    public static Action tweenBy(TweenProperty property, double by, double duration, Easing easing)
+    {
+        Action tween = new Action(TWEEN_BY, by, 0, duration);
+        tween.property = property;
+        tween.easing = easing;
+        return tween;
+    }
+
+    /**
+     * Move the sprite to a position, following an easing curve (a tween of x and y together).
+     * @param x x-coordinate at the end
+     * @param y y-coordinate at the end
+     * @param duration how long the movement takes
+     * @param easing how the movement is spread over the duration
+     * @return the action
+     */
+    public static Action moveToAct(double x, double y, double duration, Easing easing)
+    {
+        return parallelMetaAct(
+                tweenTo(TweenProperty.X, x, duration, easing),
+                tweenTo(TweenProperty.Y, y, duration, easing));
+    }
+
+    /**
+     * Move the sprite towards the target of a flow field at a constant speed, following the shortest path
+     * around obstacles; finished once the center of the sprite reaches the target
+     * (or the cell next to it, when the target is an obstacle).
+     * Any number of sprites can follow the same field: each update costs one lookup per sprite.
+     * @param flowField the field to follow, from {@link NavigationGrid#getFlowField}
+     * @param speed distance moved per second
+     * @return the action
+     */
+    public static Action followFlowField(NavigationGrid.FlowField flowField, double speed)
+    {
+        Action follow = new Action(FOLLOW_FLOW_FIELD, speed, 0, 0);
+        follow.flowField = flowField;
+        return follow;
     }
 
     // -------------------------------------------------------------------------Meta Actions :
@@ -175,47 +529,23 @@ public class Action
      */
     public static Action repeatMetaAct(Action action, int totalTimes)
     {
-        return new Action()
-        {
-            int finishedTimes = 0;
-
-            @Override
-            public boolean apply(Sprite target, double dt)
-            {
-                //instead of creating Function, we do this
-                boolean finished = action.apply(target, dt);
-                if (finished)
-                {
-                    finishedTimes += 1;
-                    action.reset();
-                }
-                return (finishedTimes == totalTimes); // When this be true, the Action above with overridden apply method will be
-                                                      // removed from the actionList. so if the total times be reached, action will end.
-            }
-        };
+        Action repeat = new Action(REPEAT, 0, 0, 0);
+        repeat.children = new Action[] { action };
+        repeat.repeatCount = totalTimes; // once the child has finished this many times, the repeat is done
+        return repeat;
     }
 
 
     /**
      * Like repeatAction but wih no cap limit
      * @param action Action to be repeated.
-     * @return an Action object that its apply method is overridden and will not leave the actionList of the sprites.
+     * @return an Action object that will never finish, so it will not leave the actionList of the sprites.
      */
     public static Action foreverMetaAct(Action action)
     {
-        return new Action()
-        {
-            @Override
-            public boolean apply(Sprite target, double dt)
-            {
-                boolean finished = action.apply(target, dt);
-
-                if (finished)
-                    action.reset();
-
-                return false; //no removing then.
-            }
-        };
+        Action forever = new Action(FOREVER, 0, 0, 0);
+        forever.children = new Action[] { action };
+        return forever;
     }
 
 
@@ -224,44 +554,27 @@ public class Action
      *
      * @param actions bunch of Actions to be executed in a queue, once one is finished, other one will be deployed.
      *                this actions will be passed to the method in an Array.
-     * @return an Action object that its apply method is some how overridden to apply all the actions passed to it in a sequence.
+     * @return an Action object that applies all the actions passed to it in a sequence.
      */
     public static Action sequenceMetaAct(Action... actions)
     {
-        return new Action()
-        {
-            //converting the Array to the ArrayList.
-            final ArrayList<Action> actionList =
-                    new ArrayList<Action>(Arrays.asList(actions));
-            int currentIndex;
-            //overriding the apply method to execute actions in the list one by one.
-            @Override
-            public boolean apply(Sprite target, double dt)
-            {
-                // selecting one action from what we passed in arguments
-                Action currentAction = actionList.get(currentIndex);
-                //applying the selected action and waiting for result
-                boolean finished = currentAction.apply(target, dt);
-                if (finished)
-                {
-                    currentIndex += 1;
-                }
-                return ( currentIndex == actionList.size() ); //it will be return true if all the actions are done and
-                                                              // and once that happens, this meta Action will be removed
-                                                              // of the sprite's actionList.
-            }
-            /*In case we want to reset a sequence of Actions, we should override the reset(); .
-            because normally reset was to reset one action, so if we call reset(); in what sequenceMetaAction()
-            returns, it will not work because we have a sequence not just one. so instead of that old version, we use this*/
-            @Override
-            public void reset()
-            {
-                for (Action action : actionList)
-                    action.reset();
+        Action sequence = new Action(SEQUENCE, 0, 0, 0);
+        sequence.children = actions.clone();
+        return sequence;
+    }
 
-                currentIndex = 0; //resetting the queue
-            }
-        };
+
+    /**
+     * Apply several actions at the same time (for example moving while fading out).
+     * @param actions Actions to apply together, each until it is done.
+     * @return an Action that is done once all the actions passed to it are done.
+     */
+    public static Action parallelMetaAct(Action... actions)
+    {
+        Action parallel = new Action(PARALLEL, 0, 0, 0);
+        parallel.children = actions.clone();
+        parallel.childFinished = new boolean[actions.length];
+        return parallel;
     }
 
 
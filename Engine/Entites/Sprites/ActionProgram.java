@@ -0,0 +1,321 @@
+package Engine.Entites.Sprites;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ *  An {@link Action} tree (moves, rotations, fades, delays and custom functions, combined with
+ *  {@link Action#sequenceMetaAct}, {@link Action#repeatMetaAct} and {@link Action#foreverMetaAct})
+ *  flattened into an array of instructions.
+ *  <p>
+ *  Applying a tree walks down to the running action through a call per level every update;
+ *  a program instead keeps the position of the running action (a program counter) and a timer,
+ *  and runs it with a single loop over int opcodes. Timing is the same as with the tree:
+ *  each update applies exactly one action, an action finishes once its time reaches its duration,
+ *  and the next action starts at the next update.
+ *  <p>
+ *  A program holds no progress, so one program can be shared by many sprites;
+ *  each sprite gets its own {@link CompiledAction} from {@link #newAction()}:
+ *  <pre>
+ *  ActionProgram patrol = ActionProgram.compile(
+ *          Action.foreverMetaAct(Action.sequenceMetaAct(
+ *                  Action.moveByAct(100, 0, 1), Action.delay(0.5), Action.rotateByAct(90, 0.25))));
+ *  for (Sprite s : guards)
+ *      s.addAction(patrol.newAction());
+ *  </pre>
+ */
+public class ActionProgram
+{
+    /**
+     * opcodes; each is followed by its operands in {@link #code}:
+     * <ul>
+     * <li>MOVE_BY, ROTATE_BY, FADE_OUT, DELAY: index of the first of its values (amounts, then duration)</li>
+     * <li>CALL: index of the function</li>
+     * <li>LOOP_BEGIN: counter (sets it to 0)</li>
+     * <li>LOOP_END: counter (or -1), times (or -1 for forever), position to jump back to</li>
+     * <li>END: none</li>
+     * </ul>
+     */
+    static final int MOVE_BY = 0;
+    static final int ROTATE_BY = 1;
+    static final int FADE_OUT = 2;
+    static final int DELAY = 3;
+    static final int CALL = 4;
+    static final int LOOP_BEGIN = 5;
+    static final int LOOP_END = 6;
+    static final int END = 7;
+
+    /**
+     * the instructions and their operands
+     */
+    final int[] code;
+
+    /**
+     * amounts and durations used by the actions
+     */
+    final double[] values;
+
+    /**
+     * custom functions (from {@link Action#Action(Action.Function)}), called with the program's timer as total time
+     */
+    final Action.Function[] functions;
+
+    /**
+     * number of repeat counters each running program needs
+     */
+    final int counterCount;
+
+    private ActionProgram(int[] code, double[] values, Action.Function[] functions, int counterCount)
+    {
+        this.code = code;
+        this.values = values;
+        this.functions = functions;
+        this.counterCount = counterCount;
+    }
+
+    /**
+     * Flatten an action tree into a program.
+     * The tree itself is not changed and can still be used.
+     * @param root the action to compile
+     * @return the program
+     * @throws IllegalArgumentException if the tree contains an action that can't be compiled
+     *   (a subclass of Action with its own apply method, a parallel action, or a meta action without actions)
+     */
+    public static ActionProgram compile(Action root)
+    {
+        Compiler compiler = new Compiler();
+        compiler.emit(root);
+        compiler.code.add(END);
+
+        int[] code = new int[compiler.code.size()];
+        for (int i = 0; i < code.length; i++)
+            code[i] = compiler.code.get(i);
+        double[] values = new double[compiler.values.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = compiler.values.get(i);
+        Action.Function[] functions = compiler.functions.toArray(new Action.Function[0]);
+
+        return new ActionProgram(code, values, functions, compiler.counterCount);
+    }
+
+    /**
+     * Create a running copy of this program, to give to one sprite.
+     * @return an action that runs this program from the start
+     */
+    public CompiledAction newAction()
+    {
+        return new CompiledAction(this);
+    }
+
+    /**
+     * Start a running program from the beginning: go to its first action.
+     */
+    void start(CompiledAction state)
+    {
+        if (state.counters.length < counterCount)
+            state.counters = new int[counterCount];
+        state.timer = 0;
+        state.programCounter = next(state, 0);
+    }
+
+    /**
+     * Apply the current action of a running program for one update, and go to the next one when it's done.
+     * @return true when the whole program is done
+     */
+    boolean run(CompiledAction state, Sprite target, double dt)
+    {
+        int pc = state.programCounter;
+        // END has no operand: an empty program, or one that is already done
+        if (code[pc] == END)
+            return true;
+        double timer = state.timer + dt;
+        int v = code[pc + 1];
+        double d;
+        boolean finished;
+
+        switch (code[pc])
+        {
+            case MOVE_BY:
+                d = values[v + 2];
+                target.moveBy(values[v] / d * dt, values[v + 1] / d * dt);
+                finished = (timer >= d);
+                break;
+            case ROTATE_BY:
+                d = values[v + 1];
+                target.rotateBy(values[v] / d * dt);
+                finished = (timer >= d);
+                break;
+            case FADE_OUT:
+                d = values[v];
+                target.opacity -= (1 / d * dt);
+                if (target.opacity < 0)
+                    target.opacity = 0;
+                finished = (timer >= d);
+                break;
+            case DELAY:
+                finished = (timer >= values[v]);
+                break;
+            case CALL:
+                finished = functions[v].run(target, dt, timer);
+                break;
+            default:
+                return true;
+        }
+
+        if (!finished)
+        {
+            state.timer = timer;
+            return false;
+        }
+
+        // the next action starts with its own time at the next update
+        state.timer = 0;
+        pc = next(state, pc + 2);
+        state.programCounter = pc;
+        return (code[pc] == END);
+    }
+
+    /**
+     * Follow loop instructions from a position until an action (or the end) is reached.
+     * @return position of that action
+     */
+    private int next(CompiledAction state, int pc)
+    {
+        int[] counters = state.counters;
+        while (true)
+        {
+            switch (code[pc])
+            {
+                case LOOP_BEGIN:
+                    counters[code[pc + 1]] = 0;
+                    pc += 2;
+                    break;
+                case LOOP_END:
+                {
+                    int counter = code[pc + 1];
+                    int times = code[pc + 2];
+                    // forever, or not repeated enough times yet: back to the start of the loop
+                    if (times < 0 || ++counters[counter] != times)
+                        pc = code[pc + 3];
+                    else
+                        pc += 4;
+                    break;
+                }
+                default:
+                    return pc;
+            }
+        }
+    }
+
+    public String toString()
+    {
+        return "ActionProgram" + Arrays.toString(code);
+    }
+
+    /**
+     * Builds the instructions of a program while walking an action tree.
+     */
+    private static class Compiler
+    {
+        final ArrayList<Integer> code = new ArrayList<Integer>();
+        final ArrayList<Double> values = new ArrayList<Double>();
+        final ArrayList<Action.Function> functions = new ArrayList<Action.Function>();
+        int counterCount;
+
+        /**
+         * number of actions (not loops) emitted so far
+         */
+        int actionCount;
+
+        void emit(Action a)
+        {
+            if (a.getClass() != Action.class)
+                throw new IllegalArgumentException("can't compile " + a.getClass().getName() + ": it has its own apply method");
+
+            switch (a.type)
+            {
+                case Action.MOVE_BY:
+                    emitAction(MOVE_BY, a.valueX, a.valueY, a.duration);
+                    break;
+                case Action.ROTATE_BY:
+                    emitAction(ROTATE_BY, a.valueX, a.duration);
+                    break;
+                case Action.FADE_OUT:
+                    emitAction(FADE_OUT, a.duration);
+                    break;
+                case Action.DELAY:
+                    emitAction(DELAY, a.duration);
+                    break;
+                case Action.CUSTOM:
+                    if (a.function == null)
+                        throw new IllegalArgumentException("can't compile an action without function");
+                    code.add(CALL);
+                    code.add(functions.size());
+                    functions.add(a.function);
+                    actionCount++;
+                    break;
+                case Action.SEQUENCE:
+                {
+                    int before = actionCount;
+                    for (Action child : a.children)
+                        emit(child);
+                    requireActions(before, "sequence");
+                    break;
+                }
+                case Action.REPEAT:
+                {
+                    int counter = counterCount++;
+                    code.add(LOOP_BEGIN);
+                    code.add(counter);
+                    emitLoop(a.children[0], counter, a.repeatCount, "repeat");
+                    break;
+                }
+                case Action.FOREVER:
+                    emitLoop(a.children[0], -1, -1, "forever");
+                    break;
+                case Action.PARALLEL:
+                    // a program runs one action at a time
+                    throw new IllegalArgumentException("can't compile a parallel action");
+                case Action.TWEEN_TO:
+                case Action.TWEEN_BY:
+                    // a tween keeps its start value; use TweenBatch for many of them
+                    throw new IllegalArgumentException("can't compile a tween");
+                case Action.FOLLOW_FLOW_FIELD:
+                    // it ends when the target is reached, not after a duration
+                    throw new IllegalArgumentException("can't compile following a flow field");
+                default:
+                    throw new IllegalArgumentException("can't compile action of type " + a.type);
+            }
+        }
+
+        private void emitAction(int opcode, double... operands)
+        {
+            code.add(opcode);
+            code.add(values.size());
+            for (double operand : operands)
+                values.add(operand);
+            actionCount++;
+        }
+
+        private void emitLoop(Action body, int counter, int times, String name)
+        {
+            int start = code.size();
+            int before = actionCount;
+            emit(body);
+            requireActions(before, name);
+            code.add(LOOP_END);
+            code.add(counter);
+            code.add(times);
+            code.add(start);
+        }
+
+        /**
+         * A loop without actions would never reach an action to apply.
+         */
+        private void requireActions(int before, String name)
+        {
+            if (actionCount == before)
+                throw new IllegalArgumentException("can't compile a " + name + " without actions");
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package Engine.Entites.Sprites;
+
+import java.util.Arrays;
+
+/**
+ *  Applies the actions of many sprites in one loop, instead of each sprite doing it
+ *  in its own {@link Sprite#update(double)}.
+ *  A sprite added to a scheduler no longer applies its actions itself; the scheduler does it
+ *  when {@link #update(double)} is called ({@link Engine.Game} does this for {@link Engine.Game#actionScheduler}
+ *  after the groups are updated).
+ *  <p>
+ *  Sprites may be added and removed at any time, also from completion callbacks while the scheduler is running.
+ *  A sprite is removed when it is removed from its {@link Engine.Entites.EntityGroup} or reset;
+ *  a sprite that was never in a group has to be removed with {@link #remove(Sprite)}.
+ */
+public class ActionScheduler
+{
+    /**
+     * the sprites; an entry is only valid if that sprite still points back to this place
+     * (entries of removed sprites are cleaned up after an update)
+     */
+    private Sprite[] sprites;
+    private int count;
+
+    /**
+     * true while {@link #update(double)} runs; removals then only mark entries
+     */
+    private boolean updating;
+    private boolean hasRemoved;
+
+    /**
+     * Create an empty scheduler.
+     */
+    public ActionScheduler()
+    {
+        sprites = new Sprite[64];
+        count = 0;
+    }
+
+    /**
+     * Add an action to a sprite, and add the sprite to this scheduler.
+     * @param s the sprite
+     * @param a the action to apply to it
+     */
+    public void run(Sprite s, Action a)
+    {
+        s.addAction(a);
+        add(s);
+    }
+
+    /**
+     * Let this scheduler apply the actions of a sprite (moving it from another scheduler if needed).
+     * @param s the sprite
+     */
+    public void add(Sprite s)
+    {
+        if (s.actionScheduler == this)
+            return;
+        if (s.actionScheduler != null)
+            s.actionScheduler.remove(s);
+
+        if (count == sprites.length)
+            sprites = Arrays.copyOf(sprites, count * 2);
+        s.actionScheduler = this;
+        s.schedulerIndex = count;
+        sprites[count++] = s;
+    }
+
+    /**
+     * Stop applying the actions of a sprite; the sprite applies them itself again.
+     * @param s the sprite
+     */
+    public void remove(Sprite s)
+    {
+        if (s.actionScheduler != this)
+            return;
+        int i = s.schedulerIndex;
+        s.actionScheduler = null;
+        s.schedulerIndex = -1;
+
+        if (updating)
+        {
+            // the loop is still using the array; clean up afterwards
+            hasRemoved = true;
+            return;
+        }
+        // swap-remove: move the last sprite into this place
+        count--;
+        Sprite last = sprites[count];
+        sprites[count] = null;
+        if (i != count)
+        {
+            sprites[i] = last;
+            last.schedulerIndex = i;
+        }
+    }
+
+    /**
+     * @return the number of sprites in this scheduler
+     */
+    public int size()
+    {
+        return count - (hasRemoved ? countRemoved() : 0);
+    }
+
+    /**
+     * Apply the actions of all sprites for one update.
+     * @param dt elapsed time since last update
+     */
+    public void update(double dt)
+    {
+        updating = true;
+        try
+        {
+            for (int i = 0; i < count; i++)
+            {
+                Sprite s = sprites[i];
+                if (s.actionScheduler == this && s.schedulerIndex == i)
+                    s.updateActions(dt);
+            }
+        }
+        finally
+        {
+            updating = false;
+        }
+        if (hasRemoved)
+            compact();
+    }
+
+    /**
+     * Close the places of sprites removed during an update.
+     */
+    private void compact()
+    {
+        int kept = 0;
+        for (int i = 0; i < count; i++)
+        {
+            Sprite s = sprites[i];
+            if (s.actionScheduler == this && s.schedulerIndex == i)
+            {
+                s.schedulerIndex = kept;
+                sprites[kept++] = s;
+            }
+        }
+        Arrays.fill(sprites, kept, count, null);
+        count = kept;
+        hasRemoved = false;
+    }
+
+    private int countRemoved()
+    {
+        int removed = 0;
+        for (int i = 0; i < count; i++)
+            if (sprites[i].actionScheduler != this || sprites[i].schedulerIndex != i)
+                removed++;
+        return removed;
+    }
+}
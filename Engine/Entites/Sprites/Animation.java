@@ -29,6 +29,11 @@ public class Animation
      */
     public boolean paused;
 
+    /**
+     * Location of the sprite sheet in the {@link ImageCache}; null if it didn't come from the cache.
+     */
+    public String imageUrl;
+
     /**
      * Used to copy or clone animations. initializes all to dfault values.
      */
@@ -56,7 +61,9 @@ public class Animation
     {
         textureList = new ArrayList<Texture>();
 
-        Image image = new Image(imageFileName);
+        // same sheet loaded before -> same decoded image
+        imageUrl = imageFileName;
+        Image image = ImageCache.acquire(imageFileName);
 
         // dividing the sprite sheet
         double frameWidth = image.getWidth()/columns;
@@ -118,6 +125,17 @@ public class Animation
             elapsedTime = 0;
     }
 
+    /**
+     * Give back the cached sprite sheet of this animation (see {@link ImageCache#release(String)});
+     * call once when this animation (and its clones) are no longer used.
+     */
+    public void release()
+    {
+        if (imageUrl != null)
+            ImageCache.release(imageUrl);
+        imageUrl = null;
+    }
+
     /**
      * cloning all animation data except deltaTime.
      * @return cloned animation.
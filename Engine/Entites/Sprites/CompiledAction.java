@@ -0,0 +1,53 @@
+package Engine.Entites.Sprites;
+
+/**
+ *  A sprite's running copy of an {@link ActionProgram}: the shared program,
+ *  plus this sprite's progress in it (program counter, timer of the current action, repeat counters).
+ *  Used like any other Action, for example with {@link Sprite#addAction(Action)}.
+ */
+public class CompiledAction extends Action
+{
+    /**
+     * the instructions being run
+     */
+    public final ActionProgram program;
+
+    /**
+     * position of the current action in the program, and time it has been running
+     */
+    int programCounter;
+    double timer;
+
+    /**
+     * number of times each repeat has finished its actions
+     */
+    int[] counters;
+
+    /**
+     * Start running a program; see {@link ActionProgram#newAction()}.
+     * @param program the program to run
+     */
+    public CompiledAction(ActionProgram program)
+    {
+        this.program = program;
+        this.counters = new int[0];
+        program.start(this);
+    }
+
+    @Override
+    public boolean apply(Sprite target, double deltaTime)
+    {
+        totalTime += deltaTime;
+        return program.run(this, target, deltaTime);
+    }
+
+    /**
+     * Start the program over from its first action.
+     */
+    @Override
+    public void reset()
+    {
+        totalTime = 0;
+        program.start(this);
+    }
+}
@@ -0,0 +1,104 @@
+package Engine.Entites.Sprites;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ *  An easing curve: maps normalized time (0 at the start of a tween, 1 at the end)
+ *  to progress (0 = start value, 1 = end value), to make a change start slowly, end slowly, overshoot, ...
+ *  <p>
+ *  Each curve is computed once into a lookup table; {@link #apply(double)} only interpolates
+ *  between two table entries, which costs the same for every curve (no Math.pow or Math.sin per sprite per frame).
+ *  The ends are exact: apply(0) and apply(1) return the curve's own values at 0 and 1 (0 and 1 for all curves here).
+ */
+public final class Easing
+{
+    /**
+     * number of segments in each lookup table
+     */
+    private static final int SEGMENTS = 1024;
+
+    public static final Easing LINEAR = new Easing(t -> t);
+    public static final Easing QUAD_IN = new Easing(t -> t * t);
+    public static final Easing QUAD_OUT = new Easing(t -> 1 - (1 - t) * (1 - t));
+    public static final Easing QUAD_IN_OUT = new Easing(t -> t < 0.5 ? 2 * t * t : 1 - 2 * (1 - t) * (1 - t));
+    public static final Easing CUBIC_IN = new Easing(t -> t * t * t);
+    public static final Easing CUBIC_OUT = new Easing(t -> 1 - (1 - t) * (1 - t) * (1 - t));
+    public static final Easing CUBIC_IN_OUT = new Easing(t -> t < 0.5 ? 4 * t * t * t : 1 - 4 * (1 - t) * (1 - t) * (1 - t));
+    /** springs past the end value and settles on it */
+    public static final Easing ELASTIC_OUT = new Easing(t -> (t == 0 || t == 1) ? t
+            : Math.pow(2, -10 * t) * Math.sin((t * 10 - 0.75) * (2 * Math.PI / 3)) + 1);
+    /** winds up around the start value before moving to the end value */
+    public static final Easing ELASTIC_IN = new Easing(t -> (t == 0 || t == 1) ? t
+            : -Math.pow(2, 10 * t - 10) * Math.sin((t * 10 - 10.75) * (2 * Math.PI / 3)));
+
+    /**
+     * the curve at SEGMENTS + 1 evenly spaced times from 0 to 1
+     */
+    private final double[] table;
+
+    /**
+     * Compute the lookup table of a curve.
+     * @param curve progress at a normalized time from 0 to 1
+     */
+    public Easing(DoubleUnaryOperator curve)
+    {
+        table = new double[SEGMENTS + 1];
+        for (int i = 0; i <= SEGMENTS; i++)
+            table[i] = curve.applyAsDouble((double) i / SEGMENTS);
+    }
+
+    /**
+     * A cubic bezier curve from (0,0) to (1,1) with control points (x1,y1) and (x2,y2),
+     * like CSS cubic-bezier(); for example (0.25, 0.1, 0.25, 1) is the CSS "ease".
+     * @param x1 time of the first control point (0 to 1)
+     * @param y1 progress of the first control point
+     * @param x2 time of the second control point (0 to 1)
+     * @param y2 progress of the second control point
+     * @return the easing curve
+     */
+    public static Easing bezier(double x1, double y1, double x2, double y2)
+    {
+        return new Easing(t ->
+        {
+            if (t <= 0 || t >= 1)
+                return t;
+            // find the curve parameter whose time is t (time grows with the parameter), by bisection
+            double low = 0, high = 1, s = t;
+            for (int i = 0; i < 40; i++)
+            {
+                s = (low + high) / 2;
+                if (bezierPoint(x1, x2, s) < t)
+                    low = s;
+                else
+                    high = s;
+            }
+            return bezierPoint(y1, y2, s);
+        });
+    }
+
+    /**
+     * @return one coordinate of a cubic bezier from 0 to 1 with control values a and b, at parameter s
+     */
+    private static double bezierPoint(double a, double b, double s)
+    {
+        double r = 1 - s;
+        return 3 * r * r * s * a + 3 * r * s * s * b + s * s * s;
+    }
+
+    /**
+     * Determine the progress at a normalized time.
+     * @param t normalized time; values below 0 count as 0, above 1 as 1
+     * @return progress (0 at the start, 1 at the end; may go beyond for curves that overshoot)
+     */
+    public double apply(double t)
+    {
+        if (t <= 0)
+            return table[0];
+        if (t >= 1)
+            return table[SEGMENTS];
+        double position = t * SEGMENTS;
+        int i = (int) position;
+        double fraction = position - i;
+        return table[i] + (table[i + 1] - table[i]) * fraction;
+    }
+}
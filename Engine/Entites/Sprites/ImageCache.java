@@ -0,0 +1,235 @@
+package Engine.Entites.Sprites;
+
+import javafx.scene.image.Image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ *  Shared storage of decoded images, so an image file is only loaded once,
+ *  no matter how many {@link Texture} and {@link Animation} objects use it.
+ *  <p>
+ *  Every {@link #acquire(String)} counts as a reference to the image, and should be matched
+ *  by a {@link #release(String)} when the image is no longer needed
+ *  ({@link Texture#release()} and {@link Animation#release()} do this).
+ *  Images without references stay in the cache so they can be reused later, up to
+ *  {@link #capacity} of them; beyond that the least recently used ones are dropped.
+ *  <p>
+ *  Images can be loaded ahead of time, on a background thread, with {@link #preload(String)}.
+ *  A preload that fails is dropped from the cache, so a later {@link #acquire(String)} tries to load the image again.
+ */
+public class ImageCache
+{
+    /**
+     * Maximum number of images without references kept in the cache.
+     */
+    public static int capacity = 64;
+
+    /**
+     * One cached image, or an image still being loaded.
+     */
+    private static class Entry
+    {
+        Image image;
+        CompletableFuture<Image> loading;
+        int references;
+    }
+
+    /**
+     * Entries by url, in least recently used order (access order).
+     */
+    private static final LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * Number of entries without references.
+     */
+    private static int unreferenced = 0;
+
+    /**
+     * Loads preloaded images, one at a time, without holding the game loop.
+     */
+    private static final ExecutorService loader = Executors.newSingleThreadExecutor(r ->
+    {
+        Thread t = new Thread(r, "ImageCache loader");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Retrieve the image at a url, loading it only if it is not in the cache yet,
+     * and count a reference to it.
+     * If the image is being preloaded, waits for that to finish.
+     * @param url location of the image (as accepted by {@link Image#Image(String)})
+     * @return the image
+     */
+    public static Image acquire(String url)
+    {
+        CompletableFuture<Image> loading;
+        synchronized (ImageCache.class)
+        {
+            Entry entry = entries.get(url);
+            if (entry == null)
+            {
+                entry = new Entry();
+                entry.image = new Image(url);
+                entries.put(url, entry);
+                unreferenced++;
+            }
+            if (entry.references++ == 0)
+                unreferenced--;
+            if (entry.image != null)
+                return entry.image;
+            loading = entry.loading;
+        }
+        // preload still running; wait outside the lock, so the loader can finish
+        try
+        {
+            return loading.join();
+        }
+        catch (CompletionException e)
+        {
+            // the preload failed and its entry is gone: load it here, as if it was never preloaded
+            return acquire(url);
+        }
+    }
+
+    /**
+     * Give back a reference to an image obtained with {@link #acquire(String)}.
+     * When no references are left, the image may be dropped from the cache later.
+     * @param url location of the image
+     */
+    public static synchronized void release(String url)
+    {
+        Entry entry = entries.get(url);
+        if (entry == null || entry.references == 0)
+            return;
+        if (--entry.references == 0)
+        {
+            unreferenced++;
+            evict();
+        }
+    }
+
+    /**
+     * Start loading an image on a background thread, without counting a reference.
+     * A later {@link #acquire(String)} then returns immediately.
+     * If loading fails, the image is removed from the cache again.
+     * @param url location of the image
+     * @return a future that completes with the image once it is loaded, or exceptionally if loading fails
+     */
+    public static synchronized CompletableFuture<Image> preload(String url)
+    {
+        Entry entry = entries.get(url);
+        if (entry != null)
+            return (entry.image != null) ? CompletableFuture.completedFuture(entry.image) : entry.loading;
+
+        Entry newEntry = new Entry();
+        newEntry.loading = CompletableFuture.supplyAsync(() ->
+        {
+            Image image;
+            try
+            {
+                image = new Image(url);
+            }
+            catch (RuntimeException e)
+            {
+                loadFailed(url, newEntry);
+                throw e;
+            }
+            if (image.isError())
+            {
+                loadFailed(url, newEntry);
+                throw new IllegalArgumentException("could not load image " + url, image.getException());
+            }
+            synchronized (ImageCache.class)
+            {
+                newEntry.image = image;
+                newEntry.loading = null;
+            }
+            return image;
+        }, loader);
+        entries.put(url, newEntry);
+        unreferenced++;
+        evict();
+        return newEntry.loading;
+    }
+
+    /**
+     * Remove the entry of a preload that failed, unless it was replaced already.
+     */
+    private static synchronized void loadFailed(String url, Entry entry)
+    {
+        entry.loading = null;
+        if (entries.get(url) != entry)
+            return;
+        entries.remove(url);
+        if (entry.references == 0)
+            unreferenced--;
+    }
+
+    /**
+     * Start loading several images on a background thread; see {@link #preload(String)}.
+     * @param urls locations of the images
+     * @return a future that completes once all images are loaded
+     */
+    public static CompletableFuture<Void> preloadAll(String... urls)
+    {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[urls.length];
+        for (int i = 0; i < urls.length; i++)
+            futures[i] = preload(urls[i]);
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * Determine if an image is in the cache (loaded or being loaded).
+     * @param url location of the image
+     * @return true if the image is cached
+     */
+    public static synchronized boolean contains(String url)
+    {
+        return entries.containsKey(url);
+    }
+
+    /**
+     * Determine the number of images in the cache.
+     * @return the number of cached images, with or without references
+     */
+    public static synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Drop all images without references from the cache.
+     */
+    public static synchronized void clear()
+    {
+        int keep = capacity;
+        capacity = 0;
+        evict();
+        capacity = keep;
+    }
+
+    /**
+     * Drop least recently used images without references (and not being loaded)
+     * until at most {@link #capacity} of them are left.
+     */
+    private static void evict()
+    {
+        Iterator<Entry> it = entries.values().iterator();
+        while (unreferenced > capacity && it.hasNext())
+        {
+            Entry entry = it.next();
+            if (entry.references == 0 && entry.image != null)
+            {
+                it.remove();
+                unreferenced--;
+            }
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package Engine.Entites.Sprites;
 
+import Engine.Entites.Entity;
+import Engine.Entites.EntityGroup;
+import Engine.Tools.Rectangle;
 import Engine.Tools.Vector;
 
 /**
@@ -38,6 +41,45 @@ public class Physics
      */
     public double decelerationValue;
 
+    /**
+     * Continuous collision: when true, the sprite's boundary is swept along each update's movement
+     * against the sprites of {@link #obstacles}, and stops at the first one it hits instead of passing
+     * through it. Meant for fast bodies (arrows, fireballs); slow bodies leave it off and don't pay for it.
+     */
+    public boolean continuousCollision;
+
+    /**
+     * Sprites (in nested groups too) that bodies with {@link #continuousCollision} can't pass through,
+     * for example the game's solidSpritesToRenderGroup; null for none.
+     */
+    public EntityGroup obstacles;
+
+    /**
+     * Sprite that fired this body (a tower shooting arrows, for example); it is never hit,
+     * even when it is one of the {@link #obstacles}. May be null.
+     */
+    public Sprite owner;
+
+    /**
+     * The obstacle hit first during the last update, or null; see {@link #continuousCollision}.
+     */
+    public Sprite hitSprite;
+
+    /**
+     * Fraction (0 to 1) of the last update's movement made before hitting {@link #hitSprite}.
+     */
+    public double hitTime;
+
+    /**
+     * Side of {@link #hitSprite} that was hit, pointing away from it (for example (-1,0) for its left side).
+     */
+    public Vector hitNormal;
+
+    /**
+     * receives the hit side of each obstacle in {@link #sweep(Rectangle, Sprite)}
+     */
+    private final Vector candidateNormal = new Vector();
+
     /**
      * Initialize values used by physics simulation.
      * For objects traveling at constant speed,
@@ -56,6 +98,7 @@ public class Physics
         accelerationValue = accValue;
         maximumSpeed = maxSpeed;
         decelerationValue = decValue;
+        hitNormal = new Vector();
 
     }
 
@@ -100,13 +143,19 @@ public class Physics
         velocity.setAngle(angleDeg);
     }
 
+    /**
+     * Accelerate this object by the given amount in the direction angle.
+     * @param amount acceleration value - PPS; only its size counts, a negative amount still accelerates towards angle
+     * @param angle direction of acceleration (in degrees)
+     */
     public void accelerateBy(double amount, double angle)
     {
-        Vector a = new Vector();
-        a.setLength(amount);
-        a.setAngle(angle);
-        acceleration.addVector(a);
-
+        double angleRad = Math.toRadians(angle);
+        // the length of the acceleration, as when it was set with setLength
+        double length = Math.abs(amount);
+        acceleration.addToCoordinates(
+                length * Math.cos(angleRad),
+                length * Math.sin(angleRad));
     }
 
     /**
@@ -136,18 +185,28 @@ public class Physics
                 acceleration.y * dt);
 
         double speed = getSpeed(); //velocity.getLength();
+        double newSpeed = speed;
 
         // decrease speed when not accelerating
-        if (acceleration.getLength() < 0.001)
-            speed -= decelerationValue * dt;
+        // (squared lengths, to avoid a second square root)
+        if (acceleration.x * acceleration.x + acceleration.y * acceleration.y < 0.001 * 0.001)
+            newSpeed -= decelerationValue * dt;
 
         // keep speed between set bounds
-        if (speed < 0)
-            speed = 0;
-        if (speed > maximumSpeed)
-            speed = maximumSpeed;
+        if (newSpeed < 0)
+            newSpeed = 0;
+        if (newSpeed > maximumSpeed)
+            newSpeed = maximumSpeed;
 
-        setSpeed(speed);
+        // scale velocity to the new speed; the direction does not change,
+        // so there is no need to go through angles like setSpeed does
+        if (newSpeed != speed)
+        {
+            if (speed > 0)
+                velocity.multiply(newSpeed / speed);
+            else
+                velocity.setValues(0, 0);
+        }
 
         position.addToCoordinates(
                 velocity.x * dt,
@@ -157,5 +216,60 @@ public class Physics
 
 
     }
-}
 
+    /**
+     * Sweep a body from where it was before {@link #update(double)} to {@link #position},
+     * and move it back to the first obstacle it hits; sets {@link #hitSprite}, {@link #hitTime} and {@link #hitNormal}.
+     * Called by the sprite after each update when {@link #continuousCollision} is set.
+     * Obstacles the body already overlaps at the start of the movement, and its {@link #owner}, are not hit.
+     * @param body boundary of the body before the update (its top-left corner at the old position)
+     * @param self the body's sprite, which is never its own obstacle
+     */
+    public void sweep(Rectangle body, Sprite self)
+    {
+        hitSprite = null;
+        hitTime = 1;
+        hitNormal.setValues(0, 0);
+        if (obstacles == null)
+            return;
+
+        double dx = position.x - body.leftX;
+        double dy = position.y - body.topY;
+        if (dx == 0 && dy == 0)
+            return;
+        sweep(obstacles, body, self, dx, dy);
+
+        if (hitSprite != null)
+            position.setValues(body.leftX + dx * hitTime, body.topY + dy * hitTime);
+    }
+
+    /**
+     * Find the earliest hit with the sprites of a group (and its nested groups).
+     */
+    private void sweep(EntityGroup group, Rectangle body, Sprite self, double dx, double dy)
+    {
+        for (Entity e : group.getList())
+        {
+            if (e instanceof Sprite)
+            {
+                Sprite other = (Sprite) e;
+                if (other == self || other == owner)
+                    continue;
+                Rectangle r = other.getBoundary();
+                // already inside at the start (just spawned at its tower, for example): no hit,
+                // or the body could never move out again
+                if (body.overlaps(r))
+                    continue;
+                double time = body.getTimeOfImpact(dx, dy, r, candidateNormal);
+                if (time < hitTime)
+                {
+                    hitTime = time;
+                    hitSprite = other;
+                    hitNormal.setValues(candidateNormal.x, candidateNormal.y);
+                }
+            }
+            else if (e instanceof EntityGroup)
+                sweep((EntityGroup) e, body, self, dx, dy);
+        }
+    }
+}
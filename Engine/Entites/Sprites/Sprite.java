@@ -1,11 +1,12 @@
 package Engine.Entites.Sprites;
 
 import Engine.Entites.Entity;
+import Engine.Tools.Camera;
+import Engine.Tools.Pool;
 import Engine.Tools.Rectangle;
 import Engine.Tools.Vector;
 
 import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.paint.Color;
 
 import java.util.ArrayList;
 
@@ -17,6 +18,12 @@ public class Sprite extends Entity
      */
     public Vector position;
 
+    /**
+     * sprite location at the previous update; used to interpolate drawing between updates.
+     * Set by {@link #savePreviousPosition()}, which the game calls before each update.
+     */
+    public Vector previousPosition;
+
     public Vector desiredLocation;
 
     /**
@@ -68,15 +75,75 @@ public class Sprite extends Entity
      */
     public Animation animation;
 
+    /**
+     * Actions applied to this sprite, all of them at every update; finished and cancelled
+     * actions are removed. Use {@link #addAction(Action)} and {@link #cancelAction(Action)}
+     * rather than changing the list directly.
+     */
     public ArrayList<Action> actionList;
 
+    /**
+     * Scheduler that applies the actions of this sprite (instead of {@link #update(double)}), or null;
+     * see {@link ActionScheduler#add(Sprite)}.
+     */
+    ActionScheduler actionScheduler;
+    int schedulerIndex = -1;
+
     
 
     public boolean noOverLap;
+
+    /**
+     * interpolation factor and camera of the frame being drawn, for {@link #draw(GraphicsContext)}
+     * (1 and null outside of {@link #draw(GraphicsContext, double, Camera)})
+     */
+    public double drawAlpha = 1;
+    public Camera drawCamera;
+
+    /**
+     * how far (in pixels) an overridden {@link #draw(GraphicsContext)} may draw outside the sprite
+     * (a health bar or a name above it, for example); the area restored around the sprite by a
+     * {@link Engine.LayeredRenderer} with dirty rectangles is this much larger on each side
+     */
+    public double drawMargin;
+
+    /**
+     * how hard this sprite is to push in a {@link Engine.Entites.ContactSolver}: of two overlapping sprites,
+     * the lighter one moves further; sprites with {@link #noOverLap} set don't move at all
+     */
+    public double mass;
+
+    /**
+     * receives the minimum translation vector in {@link #preventOverlap(Sprite)}, so nothing is allocated
+     */
+    private final Vector overlapShift = new Vector();
+
+    /**
+     * true if this sprite came from {@link #pool} (see {@link #obtain()})
+     */
+    public boolean pooled;
+
+    /**
+     * number of times this sprite was {@link #reset()}; a {@link TweenBatch} drops the tweens
+     * it started on the sprite before its last reset, so they don't change a recycled sprite
+     */
+    public int generation;
+
+    /**
+     * Shared pool of sprites, for objects that are spawned and removed often (bullets, particles, enemies).
+     */
+    public static final Pool<Sprite> pool = new Pool<Sprite>(Sprite::new, Sprite::reset, 1024);
+
+    /**
+     * texture (without image) given to reset sprites; never changed, only replaced by {@link #setTexture(Texture)}
+     */
+    private static final Texture emptyTexture = new Texture();
+
     public Sprite()
     {
 
         position = new Vector();
+        previousPosition = new Vector();
         angle = 0;
         mirrored = false;
         flipped = false;
@@ -87,6 +154,66 @@ public class Sprite extends Entity
         physics = null;
         animation = null;
         actionList = new ArrayList<>();
+        mass = 1;
+    }
+
+    /**
+     * Retrieve a sprite from {@link #pool}, in the same state as a new Sprite.
+     * Add it to a group with {@link Engine.Entites.EntityGroup#recycleRemoved} set,
+     * or call {@link #recycle()} yourself once it is no longer used.
+     * @return a reset sprite
+     */
+    public static Sprite obtain()
+    {
+        Sprite s = pool.acquire();
+        s.pooled = true;
+        return s;
+    }
+
+    /**
+     * Put this sprite back in the state of a new Sprite, keeping its own
+     * position, boundary and empty action list objects, so nothing is allocated.
+     * Pooled actions still attached to it go back to their pool.
+     */
+    public void reset()
+    {
+        position.setValues(0, 0);
+        previousPosition.setValues(0, 0);
+        desiredLocation = null;
+        angle = 0;
+        mirrored = false;
+        flipped = false;
+        opacity = 1;
+        texture = emptyTexture;
+        boundary.setPosition(0, 0);
+        boundary.setSize(0, 0);
+        width = 0;
+        height = 0;
+        visible = true;
+        physics = null;
+        animation = null;
+        for (int i = 0; i < actionList.size(); i++)
+            actionList.get(i).free();
+        actionList.clear();
+        if (actionScheduler != null)
+            actionScheduler.remove(this);
+        noOverLap = false;
+        mass = 1;
+        drawMargin = 0;
+        pooled = false;
+        generation++;
+    }
+
+    /**
+     * Give this sprite back to {@link #pool} if it came from there; recycling it again does nothing.
+     */
+    public void recycle()
+    {
+        if (!pooled)
+            return;
+        // cleared first, so a second call can't put it in the pool twice (even when the pool was full)
+        pooled = false;
+        pool.release(this);
     }
 
     /**
@@ -97,6 +224,8 @@ public class Sprite extends Entity
     public void setPosition(double x, double y)
     {
         position.setValues(x, y);
+        // placing a sprite is not a movement, so there is nothing to interpolate
+        previousPosition.setValues(x, y);
         boundary.setPosition(x , y);
     }
     /**
@@ -106,7 +235,6 @@ public class Sprite extends Entity
      */
     public void moveBy(double dx, double dy)
     {
-        Vector v = new Vector(dx,dy);
         position.addToCoordinates(dx, dy);
 
 
@@ -226,7 +354,7 @@ public class Sprite extends Entity
         if (this.overlaps(other))
         {
             Vector mtv = this.getBoundary()
-                    .getMinimumTranslationVector( other.getBoundary() );
+                    .getMinimumTranslationVector( other.getBoundary(), overlapShift );
             this.position.addVector(mtv);
         }
     }
@@ -255,34 +383,240 @@ public class Sprite extends Entity
     }
 
 
+    /**
+     * Start applying an action to this sprite, next to the actions it already has.
+     * @param a the action; must not be applied to another sprite at the same time
+     */
     public void addAction(Action a)
     {
+        a.cancelled = false;
         actionList.add(a);
     }
 
-    public void update(double dt)
+    /**
+     * Start applying an action with a name, which can be used to cancel it.
+     * @param name name of the action
+     * @param a the action
+     */
+    public void addAction(String name, Action a)
+    {
+        a.name = name;
+        addAction(a);
+    }
+
+    /**
+     * Stop applying an action; it is removed at the next update, without running its completion callback.
+     * @param a the action to cancel
+     * @return true if the sprite had this action
+     */
+    public boolean cancelAction(Action a)
+    {
+        for (int i = 0; i < actionList.size(); i++)
+        {
+            if (actionList.get(i) == a)
+            {
+                a.cancelled = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stop applying all actions with a name; see {@link #cancelAction(Action)}.
+     * @param name name of the actions to cancel
+     * @return true if the sprite had an action with this name
+     */
+    public boolean cancelAction(String name)
+    {
+        boolean found = false;
+        for (int i = 0; i < actionList.size(); i++)
+        {
+            Action a = actionList.get(i);
+            if (!a.cancelled && name.equals(a.name))
+            {
+                a.cancelled = true;
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Stop applying all actions of this sprite; see {@link #cancelAction(Action)}.
+     */
+    public void cancelAllActions()
+    {
+        for (int i = 0; i < actionList.size(); i++)
+            actionList.get(i).cancelled = true;
+    }
+
+    /**
+     * Find an action of this sprite by name.
+     * @param name name of the action
+     * @return the action (not cancelled), or null if there is none with this name
+     */
+    public Action getAction(String name)
     {
+        for (int i = 0; i < actionList.size(); i++)
+        {
+            Action a = actionList.get(i);
+            if (!a.cancelled && name.equals(a.name))
+                return a;
+        }
+        return null;
+    }
 
+    /**
+     * @return the scheduler that applies the actions of this sprite, or null if the sprite applies them itself
+     */
+    public ActionScheduler getActionScheduler()
+    {
+        return actionScheduler;
+    }
+
+    /**
+     * Determine if an action with a name is being applied to this sprite.
+     * @param name name of the action
+     * @return true if the sprite has such an action
+     */
+    public boolean hasAction(String name)
+    {
+        return getAction(name) != null;
+    }
+
+    /**
+     * Remember the current position, so draw can blend from it to where this sprite is after the update
+     * (moved by game code, collisions, physics or actions).
+     * Sprites that are not in the game's groups need this called before they are moved.
+     */
+    @Override
+    public void savePreviousPosition()
+    {
+        previousPosition.setValues(position.x, position.y);
+    }
+
+    public void update(double dt)
+    {
         updatePhysics(dt);
         updateAnimation(dt);
-        updateAction(dt);
+        // a scheduler applies the actions of its sprites all together
+        if (actionScheduler == null)
+            updateActions(dt);
 
     }
 
 
 
     /**
-     * draw this sprite on the canvas
+     * draw this sprite on the canvas.
+     * This is the method to override to change how a sprite is drawn: the game loop calls it for every
+     * visible sprite (through {@link #draw(GraphicsContext, double, Camera)}), with {@link #drawAlpha}
+     * and {@link #drawCamera} set for the frame being drawn.
      * @param context GraphicsContext object that handles drawing to the canvas
      */
     public void draw(GraphicsContext context)
     {
+        // if sprite is not visible, exit method
+        if (!this.visible)
+            return;
 
+        // Setting opacity
+        context.setGlobalAlpha( opacity );
 
+        drawImage(context, drawAlpha, drawCamera);
+    }
+
+    /**
+     * draw this sprite on the canvas, at a position between its previous and current position
+     * @param context GraphicsContext object that handles drawing to the canvas
+     * @param alpha interpolation factor; 0 draws at {@link #previousPosition}, 1 draws at {@link #position}
+     */
+    public void draw(GraphicsContext context, double alpha)
+    {
+        draw(context, alpha, null);
+    }
+
+    /**
+     * draw this sprite on the canvas as seen through a camera;
+     * nothing is drawn if the sprite is outside of the view of the camera.
+     * Sets {@link #drawAlpha} and {@link #drawCamera}, then calls {@link #draw(GraphicsContext)},
+     * so subclasses that override that method are still used.
+     * @param context GraphicsContext object that handles drawing to the canvas
+     * @param alpha interpolation factor; 0 draws at {@link #previousPosition}, 1 draws at {@link #position}
+     * @param camera the visible part of the world; null to draw in world coordinates without culling
+     */
+    public void draw(GraphicsContext context, double alpha, Camera camera)
+    {
         // if sprite is not visible, exit method
         if (!this.visible)
             return;
 
+        // if sprite is out of view, skip all the drawing work
+        if (camera != null)
+        {
+            if (!isInView(camera, alpha))
+            {
+                camera.culledCount++;
+                return;
+            }
+            camera.drawnCount++;
+        }
+
+        drawAlpha = alpha;
+        drawCamera = camera;
+        draw(context);
+        // a direct call to draw(context) draws at the current position, without camera
+        drawAlpha = 1;
+        drawCamera = null;
+    }
+
+    /**
+     * Determine if any part of this sprite may be in the view of a camera.
+     * A rotated sprite is treated as the circle around its corners, which is cheap and never too small.
+     * @param camera the camera to check
+     * @param alpha interpolation factor; 0 checks at {@link #previousPosition}, 1 checks at {@link #position}
+     * @return true if the sprite may be visible
+     */
+    public boolean isInView(Camera camera, double alpha)
+    {
+        double x = previousPosition.x + (position.x - previousPosition.x) * alpha;
+        double y = previousPosition.y + (position.y - previousPosition.y) * alpha;
+
+        if (angle % 180 == 0)
+            return camera.canSee(x, y, width / 2, height / 2);
+
+        double radius = 0.5 * Math.sqrt(width * width + height * height);
+        return camera.canSee(x, y, radius, radius);
+    }
+
+    /**
+     * draw the texture of this sprite, without checking visibility or setting the opacity of the canvas;
+     * used by groups that draw many sprites in a row (see {@link Engine.Entites.EntityGroup#batchDraw}).
+     * @param context GraphicsContext object that handles drawing to the canvas
+     * @param alpha interpolation factor; 0 draws at {@link #previousPosition}, 1 draws at {@link #position}
+     */
+    public void drawImage(GraphicsContext context, double alpha)
+    {
+        drawImage(context, alpha, null);
+    }
+
+    /**
+     * draw the texture of this sprite as seen through a camera (shifted by the camera position),
+     * without checking visibility or setting the opacity of the canvas.
+     * @param context GraphicsContext object that handles drawing to the canvas
+     * @param alpha interpolation factor; 0 draws at {@link #previousPosition}, 1 draws at {@link #position}
+     * @param camera the visible part of the world; null to draw in world coordinates
+     */
+    public void drawImage(GraphicsContext context, double alpha, Camera camera)
+    {
+        double offsetX = 0, offsetY = 0;
+        if (camera != null)
+        {
+            offsetX = camera.position.x;
+            offsetY = camera.position.y;
+        }
+
         // apply rotation and translation to image
         double A = Math.toRadians(angle);
         double cosA = Math.cos(A);
@@ -303,10 +637,8 @@ public class Sprite extends Entity
         context.setTransform(
                 scaleX * cosA,    scaleX * sinA,
                 scaleY * (-sinA), scaleY * cosA,
-                position.x, position.y );
-
-        // Setting opacity
-        context.setGlobalAlpha( opacity );
+                previousPosition.x + (position.x - previousPosition.x) * alpha - offsetX,
+                previousPosition.y + (position.y - previousPosition.y) * alpha - offsetY );
 
 
         // and destination rectangle region of canvas
@@ -320,10 +652,6 @@ public class Sprite extends Entity
                 -this.width/2, -this.height/2,    // Start point ( in this case is middle of screen).
                 this.width, this.height );               // Into this size.
                                                          // Now the center of any sprite is aligned with origin (0,0) of the canvas
-
-        context.setStroke(Color.BLACK);
-        context.stroke();
-
     }
 
     /**
@@ -350,6 +678,10 @@ public class Sprite extends Entity
             // Update values within the physics class
             physics.update(dt);
 
+            // fast bodies stop at the first obstacle along their movement
+            if (physics.continuousCollision)
+                physics.sweep(getBoundary(), this);
+
             //setting back values calculated in the physics class
             this.position.setValues(
                     physics.position.x, physics.position.y );
@@ -371,23 +703,45 @@ public class Sprite extends Entity
         }
     }
 
-    boolean finished;
     /**
-     * Updating Action class status in each frame.
+     * Apply all actions of this sprite for one update, and remove the ones that are finished or cancelled.
+     * Called by {@link #update(double)}, or by an {@link ActionScheduler}.
+     * Actions added while this runs (by a completion callback, for example) are applied in the same update.
      * @param dt elapsed time since last frame.
      */
-    private void updateAction(double dt){
-
-
-
-
-
-        if(action != null && !finished ){
-            finished = action.apply(this,dt);
+    public void updateActions(double dt)
+    {
+        int i = 0;
+        while (i < actionList.size())
+        {
+            Action a = actionList.get(i);
+            if (a.cancelled)
+            {
+                removeActionAt(i);
+                a.free();
+            }
+            else if (a.apply(this, dt))
+            {
+                removeActionAt(i);
+                if (a.onComplete != null)
+                    a.onComplete.run(this);
+                // a finished pooled action can be reused right away
+                a.free();
+            }
+            else
+                i++;
+            // the action moved into place i (if any) still has to be applied
         }
+    }
 
-
-
+    /**
+     * Remove an action by moving the last one into its place (nothing is shifted or allocated).
+     */
+    private void removeActionAt(int i)
+    {
+        int last = actionList.size() - 1;
+        actionList.set(i, actionList.get(last));
+        actionList.remove(last);
     }
 
 
@@ -0,0 +1,557 @@
+package Engine.Entites.Sprites;
+
+import Engine.Entites.Entity;
+import Engine.Tools.Camera;
+
+import javafx.scene.canvas.GraphicsContext;
+
+import java.util.Arrays;
+
+/**
+ *  Stores the data of many simple moving sprites in columns of primitive arrays
+ *  (one array for all x-coordinates, one for all y-coordinates, ...),
+ *  instead of one {@link Sprite} object (with its own Vector, Rectangle and Physics objects) per sprite.
+ *  Updating and drawing then walk through memory in order, which is much faster for
+ *  large numbers of bodies (bullets, particles, swarms of troops).
+ *
+ *  Each sprite in the store is identified by an id returned from {@link #add(Texture, double, double)};
+ *  ids stay valid until the sprite is removed. An id includes a generation number, so the id of a
+ *  removed sprite doesn't find the sprite that is added later in its place (until the generation
+ *  wraps around, after 128 sprites have used the same place). Internally sprites are packed in slots 0 to size()-1,
+ *  which may change when other sprites are removed; use {@link #indexOf(int)} to find the slot of an id,
+ *  or {@link #getHandle(int)} for an object that looks a sprite up by its id.
+ *
+ *  Movement follows the same rules as {@link Physics}: acceleration is applied, speed is
+ *  reduced by the deceleration value when not accelerating, and kept below the maximum speed.
+ */
+public class SpriteStore extends Entity
+{
+    /**
+     * position (center) of each sprite
+     */
+    public double[] x, y;
+
+    /**
+     * position of each sprite at the previous update; used to interpolate drawing
+     */
+    public double[] previousX, previousY;
+
+    /**
+     * velocity of each sprite
+     */
+    public double[] velocityX, velocityY;
+
+    /**
+     * acceleration of each sprite; reset to 0 after every update
+     */
+    public double[] accelerationX, accelerationY;
+
+    /**
+     * size of each sprite
+     */
+    public double[] width, height;
+
+    /**
+     * angle of rotation (in degrees) of each sprite
+     */
+    public double[] angle;
+
+    /**
+     * transparency of each sprite, from 0.0 (fully transparent) to 1.0 (fully opaque)
+     */
+    public double[] opacity;
+
+    /**
+     * maximum speed and deceleration value of each sprite (see {@link Physics})
+     */
+    public double[] maximumSpeed, decelerationValue;
+
+    /**
+     * image displayed for each sprite
+     */
+    public Texture[] texture;
+
+    /**
+     * number of sprites in the store; slots 0 to count-1 are in use
+     */
+    private int count;
+
+    /**
+     * an id is a place in slotOfId (low bits) and the generation of that place (high bits)
+     */
+    private static final int PLACE_BITS = 24;
+    private static final int PLACE_MASK = (1 << PLACE_BITS) - 1;
+    private static final int GENERATION_MASK = 0x7F;
+
+    /**
+     * id of the sprite in each slot, and for each place the slot (-1 for unused places) and current generation
+     */
+    private int[] idOfSlot, slotOfId, generationOfId;
+
+    /**
+     * places of removed sprites, ready to be given to new ones
+     */
+    private int[] freeIds;
+    private int freeIdCount;
+    private int nextId;
+
+    /**
+     * Initialize an empty store.
+     * @param initialCapacity number of sprites the store has room for before growing
+     */
+    public SpriteStore(int initialCapacity)
+    {
+        int n = Math.max(initialCapacity, 16);
+        x = new double[n];
+        y = new double[n];
+        previousX = new double[n];
+        previousY = new double[n];
+        velocityX = new double[n];
+        velocityY = new double[n];
+        accelerationX = new double[n];
+        accelerationY = new double[n];
+        width = new double[n];
+        height = new double[n];
+        angle = new double[n];
+        opacity = new double[n];
+        maximumSpeed = new double[n];
+        decelerationValue = new double[n];
+        texture = new Texture[n];
+        idOfSlot = new int[n];
+        slotOfId = new int[n];
+        Arrays.fill(slotOfId, -1);
+        generationOfId = new int[n];
+        freeIds = new int[n];
+    }
+
+    /**
+     * Add a sprite to the store. It does not move until a velocity or acceleration is set;
+     * its size is the size of the texture region.
+     * @param tex image displayed for the sprite
+     * @param posX x-coordinate of the sprite center
+     * @param posY y-coordinate of the sprite center
+     * @return id of the new sprite
+     */
+    public int add(Texture tex, double posX, double posY)
+    {
+        if (count == x.length)
+            grow(count * 2);
+
+        int place = (freeIdCount > 0) ? freeIds[--freeIdCount] : nextId++;
+        if (place > PLACE_MASK)
+            throw new IllegalStateException("too many sprites in store");
+        if (place >= slotOfId.length)
+        {
+            int old = slotOfId.length;
+            slotOfId = Arrays.copyOf(slotOfId, old * 2);
+            Arrays.fill(slotOfId, old, slotOfId.length, -1);
+            generationOfId = Arrays.copyOf(generationOfId, old * 2);
+        }
+        int id = (generationOfId[place] << PLACE_BITS) | place;
+
+        int i = count++;
+        idOfSlot[i] = id;
+        slotOfId[place] = i;
+
+        x[i] = previousX[i] = posX;
+        y[i] = previousY[i] = posY;
+        velocityX[i] = velocityY[i] = 0;
+        accelerationX[i] = accelerationY[i] = 0;
+        width[i] = (tex != null && tex.region != null) ? tex.region.width : 0;
+        height[i] = (tex != null && tex.region != null) ? tex.region.height : 0;
+        angle[i] = 0;
+        opacity[i] = 1;
+        maximumSpeed[i] = Double.MAX_VALUE;
+        decelerationValue[i] = 0;
+        texture[i] = tex;
+        return id;
+    }
+
+    /**
+     * Remove a sprite from the store. The last sprite is moved into its slot,
+     * so removing takes constant time. Removing a sprite that was already removed does nothing.
+     * @param id id of the sprite to remove
+     */
+    public void remove(int id)
+    {
+        int i = indexOf(id);
+        if (i < 0)
+            return;
+
+        int last = --count;
+        if (i != last)
+        {
+            x[i] = x[last];
+            y[i] = y[last];
+            previousX[i] = previousX[last];
+            previousY[i] = previousY[last];
+            velocityX[i] = velocityX[last];
+            velocityY[i] = velocityY[last];
+            accelerationX[i] = accelerationX[last];
+            accelerationY[i] = accelerationY[last];
+            width[i] = width[last];
+            height[i] = height[last];
+            angle[i] = angle[last];
+            opacity[i] = opacity[last];
+            maximumSpeed[i] = maximumSpeed[last];
+            decelerationValue[i] = decelerationValue[last];
+            texture[i] = texture[last];
+            idOfSlot[i] = idOfSlot[last];
+            slotOfId[idOfSlot[i] & PLACE_MASK] = i;
+        }
+        texture[last] = null;
+        // a new generation, so the removed id no longer finds this place
+        int place = id & PLACE_MASK;
+        slotOfId[place] = -1;
+        generationOfId[place] = (generationOfId[place] + 1) & GENERATION_MASK;
+        freeIds[freeIdCount++] = place;
+    }
+
+    /**
+     * Find the slot (index into the arrays) of a sprite.
+     * @param id id of the sprite
+     * @return the slot of the sprite, or -1 if there is no sprite with that id (or it was removed)
+     */
+    public int indexOf(int id)
+    {
+        int place = id & PLACE_MASK;
+        if (id < 0 || place >= slotOfId.length || generationOfId[place] != (id >>> PLACE_BITS))
+            return -1;
+        return slotOfId[place];
+    }
+
+    /**
+     * Find the slot of a sprite that must exist.
+     * @throws IllegalArgumentException if there is no sprite with that id (or it was removed)
+     */
+    private int existingIndexOf(int id)
+    {
+        int i = indexOf(id);
+        if (i < 0)
+            throw new IllegalArgumentException("no sprite with id " + id + " in store (removed?)");
+        return i;
+    }
+
+    /**
+     * Find the id of the sprite in a slot.
+     * @param index slot, from 0 to size()-1
+     * @return id of the sprite in that slot
+     */
+    public int idAt(int index)
+    {
+        return idOfSlot[index];
+    }
+
+    /**
+     * Determine the number of sprites in this store.
+     * @return the number of sprites
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * Set the movement values of a sprite; see {@link Physics#Physics(double, double, double)}.
+     * @param id id of the sprite
+     * @param maxSpeed maximum speed - PPS
+     * @param decValue deceleration value - PPS
+     */
+    public void setPhysics(int id, double maxSpeed, double decValue)
+    {
+        int i = existingIndexOf(id);
+        maximumSpeed[i] = maxSpeed;
+        decelerationValue[i] = decValue;
+    }
+
+    /**
+     * Accelerate a sprite during the next update.
+     * @param id id of the sprite
+     * @param amount acceleration value - PPS; only its size counts, as in {@link Physics#accelerateBy(double, double)}
+     * @param angleDeg direction of acceleration
+     */
+    public void accelerateAtAngle(int id, double amount, double angleDeg)
+    {
+        int i = existingIndexOf(id);
+        double a = Math.toRadians(angleDeg);
+        double length = Math.abs(amount);
+        accelerationX[i] += length * Math.cos(a);
+        accelerationY[i] += length * Math.sin(a);
+    }
+
+    /**
+     * Retrieve an object to read and change one sprite of this store by its id.
+     * @param id id of the sprite
+     * @return a handle for the sprite
+     */
+    public Handle getHandle(int id)
+    {
+        return new Handle(this, id);
+    }
+
+    /**
+     * Remember the current positions of all sprites, so drawing blends from them.
+     */
+    @Override
+    public void savePreviousPosition()
+    {
+        System.arraycopy(x, 0, previousX, 0, count);
+        System.arraycopy(y, 0, previousY, 0, count);
+    }
+
+    /**
+     * Move all sprites according to their velocity and acceleration,
+     * in one pass over the arrays.
+     * @param dt elapsed time (seconds) since previous iteration of game loop
+     */
+    public void update(double dt)
+    {
+        final double[] x = this.x, y = this.y;
+        final double[] vx = velocityX, vy = velocityY;
+        final double[] ax = accelerationX, ay = accelerationY;
+        final double[] maxSpeed = maximumSpeed, dec = decelerationValue;
+
+        for (int i = 0; i < count; i++)
+        {
+            // apply acceleration
+            double velX = vx[i] + ax[i] * dt;
+            double velY = vy[i] + ay[i] * dt;
+            double speed = Math.sqrt(velX * velX + velY * velY);
+
+            // decrease speed when not accelerating
+            double newSpeed = speed;
+            if (ax[i] * ax[i] + ay[i] * ay[i] < 0.001 * 0.001)
+                newSpeed -= dec[i] * dt;
+
+            // keep speed between set bounds
+            if (newSpeed < 0)
+                newSpeed = 0;
+            if (newSpeed > maxSpeed[i])
+                newSpeed = maxSpeed[i];
+
+            // scale velocity to the new speed (direction stays the same)
+            if (newSpeed != speed)
+            {
+                double scale = (speed > 0) ? newSpeed / speed : 0;
+                velX *= scale;
+                velY *= scale;
+            }
+
+            vx[i] = velX;
+            vy[i] = velY;
+            x[i] += velX * dt;
+            y[i] += velY * dt;
+            ax[i] = 0;
+            ay[i] = 0;
+        }
+    }
+
+    /**
+     * Draw all sprites of this store on the canvas.
+     * @param context GraphicsContext object that handles drawing to the canvas
+     */
+    public void draw(GraphicsContext context)
+    {
+        draw(context, 1);
+    }
+
+    /**
+     * Draw all sprites of this store, between their previous and current position.
+     * @param context GraphicsContext object that handles drawing to the canvas
+     * @param alpha interpolation factor from previous update (0) to current update (1)
+     */
+    public void draw(GraphicsContext context, double alpha)
+    {
+        draw(context, alpha, null);
+    }
+
+    /**
+     * Draw all sprites of this store that are in view of a camera.
+     * @param context GraphicsContext object that handles drawing to the canvas
+     * @param alpha interpolation factor from previous update (0) to current update (1)
+     * @param camera the visible part of the world; null to draw everything in world coordinates
+     */
+    public void draw(GraphicsContext context, double alpha, Camera camera)
+    {
+        double offsetX = 0, offsetY = 0;
+        if (camera != null)
+        {
+            offsetX = camera.position.x;
+            offsetY = camera.position.y;
+        }
+
+        double currentOpacity = -1;
+        for (int i = 0; i < count; i++)
+        {
+            Texture tex = texture[i];
+            if (tex == null || tex.image == null)
+                continue;
+
+            double posX = previousX[i] + (x[i] - previousX[i]) * alpha;
+            double posY = previousY[i] + (y[i] - previousY[i]) * alpha;
+            if (camera != null)
+            {
+                // circle around the corners fits any rotation
+                double radius = 0.5 * Math.sqrt(width[i] * width[i] + height[i] * height[i]);
+                if (!camera.canSee(posX, posY, radius, radius))
+                {
+                    camera.culledCount++;
+                    continue;
+                }
+                camera.drawnCount++;
+            }
+
+            double a = Math.toRadians(angle[i]);
+            double cosA = Math.cos(a);
+            double sinA = Math.sin(a);
+            context.setTransform(cosA, sinA, -sinA, cosA, posX - offsetX, posY - offsetY);
+
+            // only change opacity when it differs from the previous sprite
+            if (opacity[i] != currentOpacity)
+            {
+                currentOpacity = opacity[i];
+                context.setGlobalAlpha(currentOpacity);
+            }
+
+            context.drawImage(tex.image,
+                    tex.region.leftX, tex.region.topY, tex.region.width, tex.region.height,
+                    -width[i] / 2, -height[i] / 2, width[i], height[i]);
+        }
+    }
+
+    /**
+     * Make room for more sprites.
+     */
+    private void grow(int n)
+    {
+        x = Arrays.copyOf(x, n);
+        y = Arrays.copyOf(y, n);
+        previousX = Arrays.copyOf(previousX, n);
+        previousY = Arrays.copyOf(previousY, n);
+        velocityX = Arrays.copyOf(velocityX, n);
+        velocityY = Arrays.copyOf(velocityY, n);
+        accelerationX = Arrays.copyOf(accelerationX, n);
+        accelerationY = Arrays.copyOf(accelerationY, n);
+        width = Arrays.copyOf(width, n);
+        height = Arrays.copyOf(height, n);
+        angle = Arrays.copyOf(angle, n);
+        opacity = Arrays.copyOf(opacity, n);
+        maximumSpeed = Arrays.copyOf(maximumSpeed, n);
+        decelerationValue = Arrays.copyOf(decelerationValue, n);
+        texture = Arrays.copyOf(texture, n);
+        idOfSlot = Arrays.copyOf(idOfSlot, n);
+        freeIds = Arrays.copyOf(freeIds, n);
+    }
+
+    /**
+     * A small object to read and change one sprite of a {@link SpriteStore},
+     * for game code that prefers working with objects.
+     * It only holds the id; all data stays in the store.
+     */
+    public static class Handle
+    {
+        /**
+         * the store containing the sprite
+         */
+        public final SpriteStore store;
+
+        /**
+         * id of the sprite
+         */
+        public final int id;
+
+        /**
+         * Create a handle for a sprite of a store.
+         * @param store the store containing the sprite
+         * @param id id of the sprite
+         */
+        public Handle(SpriteStore store, int id)
+        {
+            this.store = store;
+            this.id = id;
+        }
+
+        /**
+         * @return true if the sprite has not been removed from the store
+         */
+        public boolean exists()
+        {
+            return store.indexOf(id) >= 0;
+        }
+
+        public double getX()
+        {
+            return store.x[store.existingIndexOf(id)];
+        }
+
+        public double getY()
+        {
+            return store.y[store.existingIndexOf(id)];
+        }
+
+        /**
+         * set the sprite position in the game world
+         * @param x x-coordinate of position
+         * @param y y-coordinate of position
+         */
+        public void setPosition(double x, double y)
+        {
+            int i = store.existingIndexOf(id);
+            store.x[i] = store.previousX[i] = x;
+            store.y[i] = store.previousY[i] = y;
+        }
+
+        /**
+         * set the velocity of the sprite
+         * @param vx velocity along x direction - PPS
+         * @param vy velocity along y direction - PPS
+         */
+        public void setVelocity(double vx, double vy)
+        {
+            int i = store.existingIndexOf(id);
+            store.velocityX[i] = vx;
+            store.velocityY[i] = vy;
+        }
+
+        public double getAngle()
+        {
+            return store.angle[store.existingIndexOf(id)];
+        }
+
+        public void setAngle(double a)
+        {
+            store.angle[store.existingIndexOf(id)] = a;
+        }
+
+        public void setOpacity(double o)
+        {
+            if (o > 1 || o < 0) return;
+            store.opacity[store.existingIndexOf(id)] = o;
+        }
+
+        public void setSize(double width, double height)
+        {
+            int i = store.existingIndexOf(id);
+            store.width[i] = width;
+            store.height[i] = height;
+        }
+
+        /**
+         * Accelerate the sprite during the next update.
+         * @param amount acceleration value - PPS
+         * @param angleDeg direction of acceleration
+         */
+        public void accelerateAtAngle(double amount, double angleDeg)
+        {
+            store.accelerateAtAngle(id, amount, angleDeg);
+        }
+
+        /**
+         * Remove the sprite from the store.
+         */
+        public void remove()
+        {
+            store.remove(id);
+        }
+    }
+}
@@ -23,6 +23,11 @@ public class Texture
      */
     public Rectangle region;
 
+    /**
+     *  Location of the image in the {@link ImageCache}; null if the image didn't come from the cache.
+     */
+    public String imageUrl;
+
     /**
      *  Create an empty texture.
      */
@@ -31,9 +36,15 @@ public class Texture
 
     }
 
+    /**
+     * Create a Texture from the image at the given url, through the {@link ImageCache}.
+     * Sets {@link #region} to the original image dimensions.
+     * @param imageFileName url of the image
+     */
     public Texture(String imageFileName)
     {
-        image = new Image(imageFileName);
+        imageUrl = imageFileName;
+        image = ImageCache.acquire(imageUrl);
         region = new Rectangle();
         double width = image.getWidth();
         double height = image.getHeight();
@@ -50,11 +61,24 @@ public class Texture
     {
         Texture tex = new Texture();
         String fileName = new File(imageFileName).toURI().toString();
-        tex.image = new Image( fileName );
+        // same file loaded before -> same decoded image
+        tex.imageUrl = fileName;
+        tex.image = ImageCache.acquire( fileName );
         tex.region = new Rectangle();
         double width = tex.image.getWidth();
         double height = tex.image.getHeight();
         tex.region.setValues(0,0, width,height);
         return tex;
     }
+
+    /**
+     * Give back the cached image of this texture (see {@link ImageCache#release(String)});
+     * call once when no sprite uses this texture anymore.
+     */
+    public void release()
+    {
+        if (imageUrl != null)
+            ImageCache.release(imageUrl);
+        imageUrl = null;
+    }
 }
@@ -0,0 +1,148 @@
+package Engine.Entites.Sprites;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ *  Packs the images of many textures into a few large images (pages),
+ *  and changes each {@link Texture} to point into its page.
+ *  Sprites drawn from the same page don't make the canvas switch images,
+ *  which is faster, especially together with {@link Engine.Entites.EntityGroup#batchDraw}.
+ *  <p>
+ *  Typical use, after all textures and animations are loaded:
+ *  <pre>
+ *  TextureAtlas atlas = new TextureAtlas(2048);
+ *  atlas.add(archerAnimation);
+ *  atlas.add(towerTexture);
+ *  atlas.build();
+ *  </pre>
+ *  Whole source images are packed, so all frames of a sprite sheet end up on the same page.
+ *  Images larger than a page are left as they are.
+ */
+public class TextureAtlas
+{
+    /**
+     * width and height of each page
+     */
+    public int pageSize;
+
+    /**
+     * empty pixels left around each packed image, so neighbours don't bleed into each other
+     */
+    public int padding;
+
+    /**
+     * the pages created by {@link #build()}
+     */
+    public ArrayList<WritableImage> pages;
+
+    /**
+     * textures waiting to be packed
+     */
+    private ArrayList<Texture> textures;
+
+    /**
+     * Create an empty atlas.
+     * @param pageSize width and height of each page (for example 2048)
+     */
+    public TextureAtlas(int pageSize)
+    {
+        this.pageSize = pageSize;
+        this.padding = 1;
+        this.pages = new ArrayList<WritableImage>();
+        this.textures = new ArrayList<Texture>();
+    }
+
+    /**
+     * Add a texture to be packed by {@link #build()}.
+     * @param tex texture; its image must be completely loaded
+     */
+    public void add(Texture tex)
+    {
+        textures.add(tex);
+    }
+
+    /**
+     * Add all frames of an animation to be packed by {@link #build()}.
+     * @param anim animation; its images must be completely loaded
+     */
+    public void add(Animation anim)
+    {
+        textures.addAll(anim.textureList);
+    }
+
+    /**
+     * Copy the images of all added textures into pages, and change every added texture
+     * ({@link Texture#image} and {@link Texture#region}) to use its page.
+     * Textures can be added and built again later; they are then packed in new pages.
+     */
+    public void build()
+    {
+        // group textures by source image, and skip textures that were added twice
+        IdentityHashMap<Image, ArrayList<Texture>> byImage = new IdentityHashMap<Image, ArrayList<Texture>>();
+        IdentityHashMap<Texture, Boolean> seen = new IdentityHashMap<Texture, Boolean>();
+        ArrayList<Image> images = new ArrayList<Image>();
+        for (Texture tex : textures)
+        {
+            if (tex.image == null || seen.put(tex, Boolean.TRUE) != null)
+                continue;
+            ArrayList<Texture> users = byImage.get(tex.image);
+            if (users == null)
+            {
+                users = new ArrayList<Texture>();
+                byImage.put(tex.image, users);
+                images.add(tex.image);
+            }
+            users.add(tex);
+        }
+        textures.clear();
+
+        // tallest images first keeps shelves well filled
+        images.sort((a, b) -> Double.compare(b.getHeight(), a.getHeight()));
+
+        WritableImage page = null;
+        int shelfX = 0, shelfY = 0, shelfHeight = 0;
+
+        for (Image image : images)
+        {
+            int w = (int) Math.ceil(image.getWidth());
+            int h = (int) Math.ceil(image.getHeight());
+            if (w + padding > pageSize || h + padding > pageSize)
+                continue;
+
+            // next shelf when this row is full, new page when the page is full
+            if (page != null && shelfX + w + padding > pageSize)
+            {
+                shelfX = 0;
+                shelfY += shelfHeight;
+                shelfHeight = 0;
+            }
+            if (page == null || shelfY + h + padding > pageSize)
+            {
+                page = new WritableImage(pageSize, pageSize);
+                pages.add(page);
+                shelfX = 0;
+                shelfY = 0;
+                shelfHeight = 0;
+            }
+
+            PixelReader reader = image.getPixelReader();
+            if (reader == null)
+                continue;
+            page.getPixelWriter().setPixels(shelfX, shelfY, w, h, reader, 0, 0);
+
+            for (Texture tex : byImage.get(image))
+            {
+                tex.image = page;
+                tex.region.setPosition(tex.region.leftX + shelfX, tex.region.topY + shelfY);
+            }
+
+            shelfX += w + padding;
+            shelfHeight = Math.max(shelfHeight, h + padding);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package Engine.Entites.Sprites;
+
+import java.util.Arrays;
+
+/**
+ *  Many tweens (see {@link Action#tweenTo}) stored in parallel arrays and updated in one loop,
+ *  for thousands of sprites that each change a property at the same time
+ *  (units spreading out, a whole wave fading in, ...).
+ *  Unlike a tween Action, no Action object is needed per tween, and finished tweens are
+ *  removed by moving the last one into their place, so nothing is allocated after the arrays have grown.
+ *  <p>
+ *  {@link Engine.Game#tweens} is updated after every update of the groups;
+ *  other batches need {@link #update(double)} to be called.
+ *  <p>
+ *  A tween belongs to the sprite as it was when the tween started: once the sprite is
+ *  {@link Sprite#reset() reset} (which {@link Sprite#recycle()} and the pool do), its tweens are
+ *  dropped at the next update without changing it, so a sprite taken from the pool again
+ *  doesn't keep moving or fading for its previous use.
+ */
+public class TweenBatch
+{
+    /**
+     * the tweens: sprite (and its {@link Sprite#generation} at the start), property, values, curve, duration and elapsed time
+     */
+    private Sprite[] sprites;
+    private int[] generations;
+    private TweenProperty[] properties;
+    private double[] start, end, duration, elapsed;
+    private Easing[] easings;
+    private int count;
+
+    /**
+     * Create an empty batch.
+     */
+    public TweenBatch()
+    {
+        sprites = new Sprite[64];
+        generations = new int[64];
+        properties = new TweenProperty[64];
+        start = new double[64];
+        end = new double[64];
+        duration = new double[64];
+        elapsed = new double[64];
+        easings = new Easing[64];
+        count = 0;
+    }
+
+    /**
+     * Start changing a property of a sprite to a value; it starts from the current value.
+     * @param s the sprite
+     * @param property the property to change
+     * @param to value at the end
+     * @param duration how long the change takes
+     * @param easing how the change is spread over the duration
+     */
+    public void tweenTo(Sprite s, TweenProperty property, double to, double duration, Easing easing)
+    {
+        if (count == sprites.length)
+            grow();
+        int i = count++;
+        sprites[i] = s;
+        generations[i] = s.generation;
+        properties[i] = property;
+        start[i] = property.get(s);
+        end[i] = to;
+        this.duration[i] = duration;
+        elapsed[i] = 0;
+        easings[i] = easing;
+    }
+
+    /**
+     * Start changing a property of a sprite by an amount.
+     * @param s the sprite
+     * @param property the property to change
+     * @param by amount of change
+     * @param duration how long the change takes
+     * @param easing how the change is spread over the duration
+     */
+    public void tweenBy(Sprite s, TweenProperty property, double by, double duration, Easing easing)
+    {
+        tweenTo(s, property, property.get(s) + by, duration, easing);
+    }
+
+    /**
+     * Stop all tweens of a sprite, leaving its properties where they are.
+     * @param s the sprite
+     */
+    public void cancel(Sprite s)
+    {
+        int i = 0;
+        while (i < count)
+        {
+            if (sprites[i] == s)
+                removeAt(i);
+            else
+                i++;
+        }
+    }
+
+    /**
+     * @return the number of running tweens (including those of reset sprites, until the next update)
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * Advance all tweens; finished tweens set their end value exactly and are removed.
+     * Tweens of sprites that were reset since they started are removed without changing them.
+     * @param dt elapsed time since last update
+     */
+    public void update(double dt)
+    {
+        int i = 0;
+        while (i < count)
+        {
+            if (sprites[i].generation != generations[i])
+            {
+                removeAt(i);
+                continue;
+            }
+            double time = elapsed[i] + dt;
+            if (time >= duration[i])
+            {
+                properties[i].set(sprites[i], end[i]);
+                // the last tween moves into place i, and is updated next
+                removeAt(i);
+                continue;
+            }
+            elapsed[i] = time;
+            properties[i].set(sprites[i], start[i] + (end[i] - start[i]) * easings[i].apply(time / duration[i]));
+            i++;
+        }
+    }
+
+    private void removeAt(int i)
+    {
+        int last = --count;
+        sprites[i] = sprites[last];
+        generations[i] = generations[last];
+        properties[i] = properties[last];
+        start[i] = start[last];
+        end[i] = end[last];
+        duration[i] = duration[last];
+        elapsed[i] = elapsed[last];
+        easings[i] = easings[last];
+        sprites[last] = null;
+        properties[last] = null;
+        easings[last] = null;
+    }
+
+    private void grow()
+    {
+        int n = count * 2;
+        sprites = Arrays.copyOf(sprites, n);
+        generations = Arrays.copyOf(generations, n);
+        properties = Arrays.copyOf(properties, n);
+        start = Arrays.copyOf(start, n);
+        end = Arrays.copyOf(end, n);
+        duration = Arrays.copyOf(duration, n);
+        elapsed = Arrays.copyOf(elapsed, n);
+        easings = Arrays.copyOf(easings, n);
+    }
+}
@@ -0,0 +1,75 @@
+package Engine.Entites.Sprites;
+
+/**
+ *  A number of a {@link Sprite} that a tween can change, read and written with plain double methods
+ *  (no reflection, no boxing).
+ *  The properties of the engine are the constants below; other ones can be made by extending this class.
+ */
+public abstract class TweenProperty
+{
+    /** x-coordinate of {@link Sprite#position} */
+    public static final TweenProperty X = new Builtin(0);
+    /** y-coordinate of {@link Sprite#position} */
+    public static final TweenProperty Y = new Builtin(1);
+    /** {@link Sprite#angle} (degrees) */
+    public static final TweenProperty ANGLE = new Builtin(2);
+    /** {@link Sprite#opacity}; values beyond 0 and 1 (from curves that overshoot) are cut off */
+    public static final TweenProperty OPACITY = new Builtin(3);
+    /** {@link Sprite#width}, also of its boundary */
+    public static final TweenProperty WIDTH = new Builtin(4);
+    /** {@link Sprite#height}, also of its boundary */
+    public static final TweenProperty HEIGHT = new Builtin(5);
+
+    /**
+     * @param s the sprite
+     * @return the current value of this property of the sprite
+     */
+    public abstract double get(Sprite s);
+
+    /**
+     * @param s the sprite
+     * @param value the new value of this property of the sprite
+     */
+    public abstract void set(Sprite s, double value);
+
+    /**
+     * The properties of the engine, in one class, so calls to them are never megamorphic.
+     */
+    private static final class Builtin extends TweenProperty
+    {
+        private final int id;
+
+        Builtin(int id)
+        {
+            this.id = id;
+        }
+
+        @Override
+        public double get(Sprite s)
+        {
+            switch (id)
+            {
+                case 0: return s.position.x;
+                case 1: return s.position.y;
+                case 2: return s.angle;
+                case 3: return s.opacity;
+                case 4: return s.width;
+                default: return s.height;
+            }
+        }
+
+        @Override
+        public void set(Sprite s, double value)
+        {
+            switch (id)
+            {
+                case 0: s.position.x = value; break;
+                case 1: s.position.y = value; break;
+                case 2: s.angle = value; break;
+                case 3: s.opacity = Math.max(0, Math.min(1, value)); break;
+                case 4: s.width = value; s.boundary.setSize(s.width, s.height); break;
+                default: s.height = value; s.boundary.setSize(s.width, s.height); break;
+            }
+        }
+    }
+}
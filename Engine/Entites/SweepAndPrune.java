@@ -0,0 +1,528 @@
+package Engine.Entites;
+
+import Engine.Entites.Sprites.Sprite;
+import Engine.Tools.Rectangle;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ *  A broadphase that keeps the left and right edges of every sprite's boundary in one array,
+ *  sorted along the x axis. Sprites move only a little between updates, so {@link #update()}
+ *  re-sorts it with an insertion sort in close to linear time; every time two edges swap,
+ *  two sprites start or stop overlapping along x.
+ *  Those pairs are then checked along y, and changes are reported to a {@link PairListener}
+ *  instead of building a full list of pairs every update.
+ *  <p>
+ *  Unlike {@link SpatialHash}, its cost doesn't depend on a cell size, so it stays fast
+ *  when many sprites bunch up in a small area, as long as they are spread out along x.
+ *  <p>
+ *  Sprites are added once with {@link #add(Sprite)} and removed with {@link #remove(Sprite)},
+ *  or follow the content of groups with {@link #sync(EntityGroup, EntityGroup)};
+ *  {@link Engine.Game#sweepAndPrune} is synced with the game's groups and updated before every {@link Engine.Screen#update()}.
+ *  Game code then replaces {@code a.overlaps(b)} by {@link #overlaps(Sprite, Sprite)},
+ *  uses {@link #forEachOverlappingPair(SpatialHash.PairFunction)}, or listens to pair events.
+ */
+public class SweepAndPrune
+{
+    /**
+     * Receives pairs of sprites whose boundaries start or stop overlapping.
+     */
+    public interface PairListener
+    {
+        /**
+         * @param a first sprite of the pair
+         * @param b second sprite of the pair; its boundary now overlaps the boundary of a
+         */
+        void pairAdded(Sprite a, Sprite b);
+
+        /**
+         * @param a first sprite of the pair
+         * @param b second sprite of the pair; their boundaries no longer overlap (or one was removed)
+         */
+        void pairRemoved(Sprite a, Sprite b);
+    }
+
+    /**
+     * receives pair events during {@link #update()} and {@link #remove(Sprite)}; may be null
+     */
+    public PairListener listener;
+
+    /**
+     * sprites by id; ids of removed sprites are reused
+     */
+    private Sprite[] sprites;
+    private int idCount;
+    private int[] freeIds;
+    private int freeIdCount;
+    private final IdentityHashMap<Sprite, Integer> ids;
+
+    /**
+     * for each id: true if the sprite was added by {@link #sync(EntityGroup, EntityGroup)} (and is removed by it),
+     * and the number of the last sync that found it in a group
+     */
+    private boolean[] fromGroups;
+    private int[] seenAtSync;
+    private int syncCount;
+
+    /**
+     * total modification count of the synced groups at the last sync, to skip syncs when nothing changed
+     */
+    private long syncedModifications = -1;
+
+    /**
+     * edges sorted along x: their values, and for each the sprite id times two, plus one for a right edge
+     */
+    private double[] edgeValue;
+    private int[] edgeInfo;
+    private int edgeCount;
+
+    /**
+     * pairs of sprites that overlap along x, and whether they also overlap along y
+     */
+    private final PairTable pairs;
+
+    /**
+     * Create an empty broadphase.
+     */
+    public SweepAndPrune()
+    {
+        sprites = new Sprite[64];
+        fromGroups = new boolean[64];
+        seenAtSync = new int[64];
+        freeIds = new int[16];
+        ids = new IdentityHashMap<Sprite, Integer>();
+        edgeValue = new double[128];
+        edgeInfo = new int[128];
+        pairs = new PairTable();
+    }
+
+    /**
+     *  Add a Sprite; its pairs are found at the next {@link #update()}.
+     *  @param s the Sprite to add
+     */
+    public void add(Sprite s)
+    {
+        if (ids.containsKey(s))
+            return;
+
+        int id;
+        if (freeIdCount > 0)
+            id = freeIds[--freeIdCount];
+        else
+        {
+            if (idCount == sprites.length)
+            {
+                sprites = Arrays.copyOf(sprites, idCount * 2);
+                fromGroups = Arrays.copyOf(fromGroups, idCount * 2);
+                seenAtSync = Arrays.copyOf(seenAtSync, idCount * 2);
+            }
+            id = idCount++;
+        }
+        sprites[id] = s;
+        fromGroups[id] = false;
+        seenAtSync[id] = syncCount;
+        ids.put(s, id);
+
+        if (edgeCount + 2 > edgeValue.length)
+        {
+            edgeValue = Arrays.copyOf(edgeValue, edgeValue.length * 2);
+            edgeInfo = Arrays.copyOf(edgeInfo, edgeInfo.length * 2);
+        }
+        // both edges start at the far right, and are sorted into place (finding pairs) by the next update
+        edgeValue[edgeCount] = Double.POSITIVE_INFINITY;
+        edgeInfo[edgeCount++] = id << 1;
+        edgeValue[edgeCount] = Double.POSITIVE_INFINITY;
+        edgeInfo[edgeCount++] = (id << 1) | 1;
+    }
+
+    /**
+     *  Add every Sprite in a group (and its nested groups).
+     *  @param group the group whose sprites are added
+     */
+    public void addAll(EntityGroup group)
+    {
+        for (Entity e : group.getList())
+        {
+            if (e instanceof Sprite)
+                add((Sprite) e);
+            else if (e instanceof EntityGroup)
+                addAll((EntityGroup) e);
+        }
+    }
+
+    /**
+     *  Follow the content of two groups (and their nested groups): sprites added to them since the last sync
+     *  are added, and sprites added by an earlier sync that are no longer in them are removed (reporting
+     *  their pairs). Sprites added with {@link #add(Sprite)} are left alone.
+     *  Does nothing while no group changed; {@link Engine.Game} calls it with its groups before every update.
+     *  @param first the first group
+     *  @param second the second group
+     */
+    public void sync(EntityGroup first, EntityGroup second)
+    {
+        long modifications = modificationCount(first) + modificationCount(second);
+        if (modifications == syncedModifications)
+            return;
+        syncedModifications = modifications;
+
+        syncCount++;
+        markGroup(first);
+        markGroup(second);
+        for (int id = 0; id < idCount; id++)
+        {
+            if (sprites[id] != null && fromGroups[id] && seenAtSync[id] != syncCount)
+                remove(sprites[id]);
+        }
+    }
+
+    /**
+     *  Add the sprites of a group that are missing, and mark all of them as seen by the current sync.
+     */
+    private void markGroup(EntityGroup group)
+    {
+        for (Entity e : group.getList())
+        {
+            if (e instanceof EntityGroup)
+                markGroup((EntityGroup) e);
+            else if (e instanceof Sprite)
+            {
+                Sprite s = (Sprite) e;
+                Integer id = ids.get(s);
+                if (id == null)
+                {
+                    add(s);
+                    id = ids.get(s);
+                    fromGroups[id] = true;
+                }
+                seenAtSync[id] = syncCount;
+            }
+        }
+    }
+
+    /**
+     * @return the modification counts of a group and its nested groups, added up
+     */
+    private static long modificationCount(EntityGroup group)
+    {
+        long count = group.getModificationCount();
+        for (Entity e : group.getList())
+            if (e instanceof EntityGroup)
+                count += modificationCount((EntityGroup) e);
+        return count;
+    }
+
+    /**
+     *  Remove a Sprite; pairs it was part of are reported as removed.
+     *  @param s the Sprite to remove
+     */
+    public void remove(Sprite s)
+    {
+        Integer boxed = ids.remove(s);
+        if (boxed == null)
+            return;
+        int id = boxed;
+
+        // drop its pairs
+        int p = 0;
+        while (p < pairs.count)
+        {
+            if (pairs.first[p] == id || pairs.second[p] == id)
+            {
+                if (pairs.overlapping[p] && listener != null)
+                    listener.pairRemoved(sprites[pairs.first[p]], sprites[pairs.second[p]]);
+                pairs.removeAt(p);
+            }
+            else
+                p++;
+        }
+
+        // drop its edges, keeping the others in order
+        int kept = 0;
+        for (int e = 0; e < edgeCount; e++)
+        {
+            if ((edgeInfo[e] >> 1) == id)
+                continue;
+            edgeValue[kept] = edgeValue[e];
+            edgeInfo[kept++] = edgeInfo[e];
+        }
+        edgeCount = kept;
+
+        sprites[id] = null;
+        if (freeIdCount == freeIds.length)
+            freeIds = Arrays.copyOf(freeIds, freeIdCount * 2);
+        freeIds[freeIdCount++] = id;
+    }
+
+    /**
+     *  Remove all sprites, without reporting pairs.
+     */
+    public void clear()
+    {
+        Arrays.fill(sprites, 0, idCount, null);
+        idCount = 0;
+        freeIdCount = 0;
+        ids.clear();
+        edgeCount = 0;
+        pairs.clear();
+        syncedModifications = -1;
+    }
+
+    /**
+     * @return the number of sprites
+     */
+    public int size()
+    {
+        return ids.size();
+    }
+
+    /**
+     * @return the number of pairs of sprites whose boundaries overlap (as of the last update)
+     */
+    public int getOverlappingPairCount()
+    {
+        int count = 0;
+        for (int p = 0; p < pairs.count; p++)
+            if (pairs.overlapping[p])
+                count++;
+        return count;
+    }
+
+    /**
+     *  Sort the edges of all sprites where their boundaries are now, and report pairs that
+     *  started or stopped overlapping to the {@link #listener}.
+     */
+    public void update()
+    {
+        // current edges
+        for (int e = 0; e < edgeCount; e++)
+        {
+            int info = edgeInfo[e];
+            Rectangle r = sprites[info >> 1].getBoundary();
+            edgeValue[e] = ((info & 1) == 0) ? r.leftX : r.rightX;
+        }
+
+        // insertion sort; at equal values a right edge goes first, since touching is not overlapping
+        for (int i = 1; i < edgeCount; i++)
+        {
+            double value = edgeValue[i];
+            int info = edgeInfo[i];
+            boolean isRight = (info & 1) != 0;
+            int j = i - 1;
+            while (j >= 0 && (edgeValue[j] > value
+                    || (edgeValue[j] == value && isRight && (edgeInfo[j] & 1) == 0)))
+            {
+                int other = edgeInfo[j];
+                boolean otherIsRight = (other & 1) != 0;
+                if (!isRight && otherIsRight)
+                {
+                    // a left edge passes a right edge: may start overlapping along x
+                    startPair(info >> 1, other >> 1);
+                }
+                else if (isRight && !otherIsRight)
+                {
+                    // a right edge passes a left edge: stopped overlapping along x
+                    stopPair(info >> 1, other >> 1);
+                }
+                edgeValue[j + 1] = edgeValue[j];
+                edgeInfo[j + 1] = other;
+                j--;
+            }
+            edgeValue[j + 1] = value;
+            edgeInfo[j + 1] = info;
+        }
+
+        // pairs overlapping along x: check y too
+        for (int p = 0; p < pairs.count; p++)
+        {
+            Sprite a = sprites[pairs.first[p]];
+            Sprite b = sprites[pairs.second[p]];
+            boolean overlapping = a.boundary.overlaps(b.boundary);
+            if (overlapping != pairs.overlapping[p])
+            {
+                pairs.overlapping[p] = overlapping;
+                if (listener != null)
+                {
+                    if (overlapping)
+                        listener.pairAdded(a, b);
+                    else
+                        listener.pairRemoved(a, b);
+                }
+            }
+        }
+    }
+
+    /**
+     *  Determine if the boundaries of two sprites overlapped at the last {@link #update()};
+     *  a constant time lookup, to use instead of {@link Sprite#overlaps(Sprite)}.
+     *  @return true if both sprites are stored and overlap
+     */
+    public boolean overlaps(Sprite a, Sprite b)
+    {
+        Integer idA = ids.get(a), idB = ids.get(b);
+        if (idA == null || idB == null)
+            return false;
+        int p = pairs.indexOf(idA, idB);
+        return p >= 0 && pairs.overlapping[p];
+    }
+
+    /**
+     *  Run code on every pair of sprites whose boundaries overlapped at the last {@link #update()}.
+     *  @param f code to run on each overlapping pair
+     */
+    public void forEachOverlappingPair(SpatialHash.PairFunction f)
+    {
+        for (int p = 0; p < pairs.count; p++)
+            if (pairs.overlapping[p])
+                f.run(sprites[pairs.first[p]], sprites[pairs.second[p]]);
+    }
+
+    /**
+     * Two sprites overlap along x now: remember them as a pair (checked along y afterwards).
+     */
+    private void startPair(int a, int b)
+    {
+        Rectangle ra = sprites[a].boundary, rb = sprites[b].boundary;
+        // edges of sprites that are not sorted yet can pass each other without overlapping
+        if (ra.leftX < rb.rightX && rb.leftX < ra.rightX && pairs.indexOf(a, b) < 0)
+            pairs.add(a, b);
+    }
+
+    /**
+     * Two sprites don't overlap along x anymore: forget the pair.
+     */
+    private void stopPair(int a, int b)
+    {
+        int p = pairs.indexOf(a, b);
+        if (p < 0)
+            return;
+        if (pairs.overlapping[p] && listener != null)
+            listener.pairRemoved(sprites[pairs.first[p]], sprites[pairs.second[p]]);
+        pairs.removeAt(p);
+    }
+
+    /**
+     * Pairs of sprite ids in arrays, with a hash table (open addressing) from pair to index.
+     */
+    private static class PairTable
+    {
+        int[] first = new int[64], second = new int[64];
+        boolean[] overlapping = new boolean[64];
+        int count;
+
+        /**
+         * keys (pair + 1, 0 = empty slot) and the index of each pair
+         */
+        long[] keys = new long[128];
+        int[] slots = new int[128];
+
+        static long key(int a, int b)
+        {
+            // the same key for (a, b) and (b, a)
+            int low = Math.min(a, b), high = Math.max(a, b);
+            return (((long) high << 32) | low) + 1;
+        }
+
+        int hashSlot(long key)
+        {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & (keys.length - 1);
+        }
+
+        int indexOf(int a, int b)
+        {
+            long key = key(a, b);
+            for (int h = hashSlot(key); keys[h] != 0; h = (h + 1) & (keys.length - 1))
+                if (keys[h] == key)
+                    return slots[h];
+            return -1;
+        }
+
+        void add(int a, int b)
+        {
+            if (count == first.length)
+            {
+                first = Arrays.copyOf(first, count * 2);
+                second = Arrays.copyOf(second, count * 2);
+                overlapping = Arrays.copyOf(overlapping, count * 2);
+            }
+            // keep the table at most half full
+            if ((count + 1) * 2 > keys.length)
+                rehash(keys.length * 2);
+            first[count] = a;
+            second[count] = b;
+            overlapping[count] = false;
+            put(key(a, b), count);
+            count++;
+        }
+
+        void removeAt(int p)
+        {
+            removeKey(key(first[p], second[p]));
+            int last = --count;
+            if (p != last)
+            {
+                first[p] = first[last];
+                second[p] = second[last];
+                overlapping[p] = overlapping[last];
+                // the moved pair has a new index
+                long key = key(first[p], second[p]);
+                for (int h = hashSlot(key); ; h = (h + 1) & (keys.length - 1))
+                    if (keys[h] == key)
+                    {
+                        slots[h] = p;
+                        break;
+                    }
+            }
+        }
+
+        void clear()
+        {
+            count = 0;
+            Arrays.fill(keys, 0);
+        }
+
+        private void put(long key, int index)
+        {
+            int h = hashSlot(key);
+            while (keys[h] != 0)
+                h = (h + 1) & (keys.length - 1);
+            keys[h] = key;
+            slots[h] = index;
+        }
+
+        /**
+         * Remove a key, and move later keys of the same run back so lookups still find them.
+         */
+        private void removeKey(long key)
+        {
+            int mask = keys.length - 1;
+            int h = hashSlot(key);
+            while (keys[h] != key)
+                h = (h + 1) & mask;
+            keys[h] = 0;
+
+            for (int next = (h + 1) & mask; keys[next] != 0; next = (next + 1) & mask)
+            {
+                int home = hashSlot(keys[next]);
+                // move the key if its home slot is not between the hole and its current slot
+                boolean between = (h <= next) ? (h < home && home <= next) : (h < home || home <= next);
+                if (!between)
+                {
+                    keys[h] = keys[next];
+                    slots[h] = slots[next];
+                    keys[next] = 0;
+                    h = next;
+                }
+            }
+        }
+
+        private void rehash(int size)
+        {
+            keys = new long[size];
+            slots = new int[size];
+            for (int p = 0; p < count; p++)
+                put(key(first[p], second[p]), p);
+        }
+    }
+}
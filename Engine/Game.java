@@ -2,7 +2,13 @@ package Engine;
 
 import Engine.Entites.Entity;
 import Engine.Entites.EntityGroup;
+import Engine.Entites.SpatialHash;
+import Engine.Entites.SweepAndPrune;
+import Engine.Entites.Sprites.ActionScheduler;
+import Engine.Entites.Sprites.TweenBatch;
 
+import Engine.Tools.Camera;
+import Engine.Tools.FrameProfiler;
 import Engine.Tools.Input;
 import javafx.animation.AnimationTimer;
 import javafx.application.Application;
@@ -50,6 +56,97 @@ public abstract class Game
      * Input class to interact with user
      */
     public Input input;
+
+    /**
+     * Optional broadphase for collision checks between sprites of
+     * {@link #solidSpritesToRenderGroup} and {@link #toRenderGroup}.
+     * Null by default; once set, it is rebuilt before every call to {@link #update()}.
+     */
+    public SpatialHash collisionGrid;
+
+    /**
+     * Optional broadphase that reports pairs of sprites starting or stopping to overlap;
+     * see {@link SweepAndPrune}. Null by default; once set, it follows the sprites of
+     * {@link #solidSpritesToRenderGroup} and {@link #toRenderGroup} (see {@link SweepAndPrune#sync}),
+     * and it is updated before every call to {@link #update()}.
+     */
+    public SweepAndPrune sweepAndPrune;
+
+    /**
+     * Optional layered rendering: when set, {@link #render(double)} uses it instead of
+     * clearing the canvas and drawing both groups every frame. For example:
+     * <pre>
+     * layeredRenderer = new LayeredRenderer(Color.BROWN, solidSpritesToRenderGroup, toRenderGroup);
+     * </pre>
+     */
+    public LayeredRenderer layeredRenderer;
+
+    /**
+     * The part of the world shown on the canvas; starts at (0,0) with the size of the canvas.
+     * Move it to scroll the world. Sprites outside of its view are not drawn,
+     * and {@link Camera#drawnCount} / {@link Camera#culledCount} count them for the last frame.
+     */
+    public Camera camera;
+
+    /**
+     * Applies the actions of the sprites added to it, all in one loop, after the groups are updated;
+     * see {@link ActionScheduler}. Sprites that are not added apply their actions themselves.
+     */
+    public ActionScheduler actionScheduler = new ActionScheduler();
+
+    /**
+     * Tweens of many sprites, updated together after the actions; see {@link TweenBatch}.
+     */
+    public TweenBatch tweens = new TweenBatch();
+
+    /**
+     * Times each phase of the game loop and counts entities updated and drawn.
+     * Disabled by default; set {@code profiler.enabled = true} to start measuring,
+     * and use {@link FrameProfiler#setOverlayVisible(boolean)} to show the results on the canvas.
+     */
+    public FrameProfiler profiler = new FrameProfiler();
+
+    /**
+     * ids of the measurements in {@link #profiler}
+     */
+    private final int updatePhase = profiler.addPhase("Screen.update");
+    private final int groupUpdatePhase = profiler.addPhase("toRenderGroup.update");
+    private final int solidUpdatePhase = profiler.addPhase("solidSpritesToRenderGroup.update");
+    private final int actionPhase = profiler.addPhase("actions and tweens");
+    private final int inputPhase = profiler.addPhase("Input.update");
+    private final int clearPhase = profiler.addPhase("clear");
+    private final int solidDrawPhase = profiler.addPhase("solidSpritesToRenderGroup.draw");
+    private final int groupDrawPhase = profiler.addPhase("toRenderGroup.draw");
+    private final int tickPhase = profiler.addPhase("tick");
+    private final int renderPhase = profiler.addPhase("render");
+    private final int framePhase = profiler.addPhase("frame");
+    private final int updatedCounter = profiler.addCounter("entities updated");
+    private final int drawnCounter = profiler.addCounter("entities drawn");
+
+    /**
+     * Duration (seconds) of one simulation update; the game state always advances
+     * in steps of this size, no matter how often frames are rendered.
+     * See {@link #setUpdateRate(double)}.
+     */
+    public double fixedTimeStep = 1 / 60.0;
+
+    /**
+     * Maximum number of updates run before a frame is rendered.
+     * When the machine can't keep up, the remaining time is dropped instead of
+     * piling up (which would make every following frame even slower).
+     */
+    public int maxUpdatesPerFrame = 5;
+
+    /**
+     * Simulation time (seconds) that has passed but is not yet consumed by updates.
+     */
+    private double accumulator;
+
+    /**
+     * Time stamp (nanoseconds) of the previous frame; 0 before the first frame.
+     */
+    private long previousNanoTime;
+
     /**
      *  Initializes the window and game objects,
      *  and manages the life cycle of the game (initialization and game loop).
@@ -74,6 +171,7 @@ public abstract class Game
 
         toRenderGroup = new EntityGroup();
         solidSpritesToRenderGroup = new EntityGroup();
+        camera = new Camera(canvas.getWidth(), canvas.getHeight());
         //scene is gonna listen for key events
         input = new Input(mainScene);
 
@@ -84,28 +182,31 @@ public abstract class Game
         {
             public void handle(long nanoTime)
             {
-
-                // Update game state (interaction between game objects)
-                self.update();
-
-                // Update each object internal data
-                toRenderGroup.update(1 / 60.0);
-                solidSpritesToRenderGroup.update(1 / 60.0);
-
-
-                //update user input
-                input.update();
-
-                // clear the canvas
-                self.context.setFill(Color.BROWN);
-                self.context.fillRect( 0,0,
-                        self.canvas.getWidth(),
-                        self.canvas.getHeight() );
-
-                // render game objects
-                self.solidSpritesToRenderGroup.draw(self.context);
-                self.toRenderGroup.draw( self.context );
-
+                // first frame: run a single update so there is something to show
+                if (previousNanoTime == 0)
+                    previousNanoTime = nanoTime - (long) (fixedTimeStep * 1e9);
+
+                accumulator += (nanoTime - previousNanoTime) / 1e9;
+                previousNanoTime = nanoTime;
+
+                // consume elapsed time in fixed steps
+                int updates = 0;
+                while (accumulator >= fixedTimeStep && updates < maxUpdatesPerFrame)
+                {
+                    self.tick(fixedTimeStep);
+                    accumulator -= fixedTimeStep;
+                    updates++;
+                }
+
+                // too far behind (spiral of death): drop the time we could not simulate
+                if (accumulator >= fixedTimeStep)
+                    accumulator = accumulator % fixedTimeStep;
+
+                // how far we are between the last update and the next one
+                self.render(accumulator / fixedTimeStep);
+
+                // whole frame, from the time stamp JavaFX gave us until now
+                profiler.end(framePhase, profiler.enabled ? nanoTime : 0);
             }
         };
 
@@ -119,6 +220,97 @@ public abstract class Game
         gameLoop.start();
     }
 
+    /**
+     * Advance the game by one update: game logic ({@link #update()}),
+     * then the internal data of each object, then user input.
+     * Called by the game loop, or by a {@link HeadlessRunner} when there is no window.
+     * @param dt elapsed time (seconds) of this update; normally {@link #fixedTimeStep}
+     */
+    public void tick(double dt)
+    {
+        // entities added since the last update (in initialize(), for example) are visible to update()
+        toRenderGroup.flush();
+        solidSpritesToRenderGroup.flush();
+
+        // everything update() and the groups move from here on is blended by render
+        toRenderGroup.savePreviousPosition();
+        solidSpritesToRenderGroup.savePreviousPosition();
+
+        // sort sprites into cells before game code checks collisions
+        if (collisionGrid != null)
+            collisionGrid.rebuild(solidSpritesToRenderGroup, toRenderGroup);
+        if (sweepAndPrune != null)
+        {
+            sweepAndPrune.sync(solidSpritesToRenderGroup, toRenderGroup);
+            sweepAndPrune.update();
+        }
+
+        long tickStart = profiler.begin();
+
+        // Update game state (interaction between game objects)
+        update();
+        long t = profiler.end(updatePhase, tickStart);
+
+        // Update each object internal data
+        toRenderGroup.update(dt);
+        t = profiler.end(groupUpdatePhase, t);
+        solidSpritesToRenderGroup.update(dt);
+        t = profiler.end(solidUpdatePhase, t);
+        actionScheduler.update(dt);
+        tweens.update(dt);
+        t = profiler.end(actionPhase, t);
+
+        //update user input
+        input.update();
+        if (input.recorder != null)
+            input.recorder.endTick(dt);
+        profiler.end(inputPhase, t);
+        profiler.end(tickPhase, tickStart);
+
+        if (profiler.enabled)
+            profiler.count(updatedCounter,
+                    toRenderGroup.getEntityCount() + solidSpritesToRenderGroup.getEntityCount());
+    }
+
+    /**
+     * Draw the current state of the game on the canvas.
+     * @param alpha interpolation factor from previous update (0) to current update (1)
+     */
+    public void render(double alpha)
+    {
+        if (camera != null)
+            camera.resetCounts();
+
+        long renderStart = profiler.begin();
+
+        if (layeredRenderer != null)
+            layeredRenderer.render(context, alpha, camera);
+        else
+        {
+            // clear the canvas
+            context.setFill(Color.BROWN);
+            context.fillRect( 0,0,
+                    canvas.getWidth(),
+                    canvas.getHeight() );
+            long t = profiler.end(clearPhase, renderStart);
+
+            // render game objects
+            solidSpritesToRenderGroup.draw(context, alpha, camera);
+            t = profiler.end(solidDrawPhase, t);
+            toRenderGroup.draw( context, alpha, camera );
+            profiler.end(groupDrawPhase, t);
+        }
+        profiler.end(renderPhase, renderStart);
+
+        if (profiler.enabled && camera != null)
+            profiler.count(drawnCounter, camera.drawnCount);
+
+        profiler.drawOverlay(context);
+        // the overlay covers an area the layered renderer doesn't know about
+        if (layeredRenderer != null && profiler.isOverlayVisible())
+            layeredRenderer.restoreAllNextFrame();
+    }
+
     /**
      * Set the text that appears in the window title bar
      * @param title window title
@@ -128,6 +320,16 @@ public abstract class Game
         stage.setTitle(title);
     }
 
+    /**
+     * Set how many times per second the game state is updated.
+     * Rendering still happens once per frame, whatever the monitor refresh rate is.
+     * @param updatesPerSecond number of updates per second (typically 60)
+     */
+    public void setUpdateRate(double updatesPerSecond)
+    {
+        fixedTimeStep = 1 / updatesPerSecond;
+    }
+
     /**
      * set the size of the window/canvas that displays game graphics
      * @param width window/canvas width
@@ -137,6 +339,7 @@ public abstract class Game
     {
         canvas.setWidth(width);
         canvas.setHeight(height);
+        camera.setSize(width, height);
         stage.sizeToScene();
     }
 
@@ -0,0 +1,192 @@
+package Engine;
+
+import Engine.Entites.Entity;
+import Engine.Entites.EntityGroup;
+import Engine.Entites.Sprites.Sprite;
+import Engine.Entites.Sprites.SpriteStore;
+import Engine.Tools.Input;
+import Engine.Tools.InputReplayer;
+
+/**
+ *  Runs a {@link Game} without a window: no Stage, Scene or Canvas is created,
+ *  and the JavaFX application is never launched.
+ *  The game is initialized and updated exactly like in the game loop of {@link Game#start},
+ *  with {@link Game#fixedTimeStep} as elapsed time of each update, so
+ *  simulations can run on servers, for replay validation or for load tests.
+ *
+ *  Game code must not use {@link Game#canvas}, {@link Game#context} or {@link Game#stage}
+ *  (they are null), and user input only comes from events added to {@link Game#input} directly.
+ */
+public class HeadlessRunner
+{
+    /**
+     * The game being run.
+     */
+    public Game game;
+
+    /**
+     * If true, updates are spaced out in real time (at {@link Game#fixedTimeStep} intervals);
+     * if false, the game runs as fast as possible.
+     */
+    public boolean realTime;
+
+    /**
+     * Receives a frame after each update; null means nothing is rendered.
+     */
+    public RenderSink renderSink;
+
+    /**
+     * Number of updates run so far.
+     */
+    public long tickCount;
+
+    /**
+     * Prepare a game to run without a window and initialize it.
+     * @param game the game to run; {@link Game#start} must not have been called
+     */
+    public HeadlessRunner(Game game)
+    {
+        this.game = game;
+        realTime = false;
+        renderSink = null;
+        tickCount = 0;
+
+        game.toRenderGroup = new EntityGroup();
+        game.solidSpritesToRenderGroup = new EntityGroup();
+        // not listening to any window
+        game.input = new Input();
+
+        game.initialize();
+    }
+
+    /**
+     * Run a number of updates.
+     * @param ticks number of updates to run
+     */
+    public void run(long ticks)
+    {
+        long stepNanos = (long) (game.fixedTimeStep * 1e9);
+        long next = System.nanoTime();
+
+        for (long i = 0; i < ticks; i++)
+        {
+            game.tick(game.fixedTimeStep);
+            tickCount++;
+
+            if (renderSink != null)
+                renderSink.render(game, 1);
+
+            if (realTime)
+            {
+                next += stepNanos;
+                long wait = next - System.nanoTime();
+                if (wait > 0 && !sleep(wait))
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Run as many updates as fit in the given amount of simulated time.
+     * @param seconds simulated time (seconds)
+     */
+    public void runFor(double seconds)
+    {
+        run((long) Math.floor(seconds / game.fixedTimeStep + 1e-9));
+    }
+
+    /**
+     * Run the game with the input of a recording (see {@link Engine.Tools.InputRecorder}),
+     * one update per recorded update, with the recorded elapsed times, as fast as possible
+     * ({@link #realTime} is ignored).
+     * @param replayer the recording to play back
+     */
+    public void replay(InputReplayer replayer)
+    {
+        while (replayer.nextTick(game.input))
+        {
+            game.tick(replayer.tickDelta);
+            tickCount++;
+
+            if (renderSink != null)
+                renderSink.render(game, 1);
+        }
+    }
+
+    /**
+     * Compute a hash of the positions of all sprites in the game
+     * (both groups, nested groups and {@link SpriteStore} objects, in list order).
+     * Two runs that end with the same hash almost certainly ended in the same state;
+     * used to check that a replay reproduced a recorded match.
+     * @return hash of the sprite positions
+     */
+    public long stateHash()
+    {
+        long hash = 0xcbf29ce484222325L;
+        hash = hash(hash, game.solidSpritesToRenderGroup);
+        hash = hash(hash, game.toRenderGroup);
+        return hash;
+    }
+
+    private static long hash(long hash, EntityGroup group)
+    {
+        group.flush();
+        for (Entity e : group.getList())
+        {
+            if (e instanceof Sprite)
+            {
+                Sprite s = (Sprite) e;
+                hash = mix(hash, s.position.x);
+                hash = mix(hash, s.position.y);
+            }
+            else if (e instanceof SpriteStore)
+            {
+                SpriteStore store = (SpriteStore) e;
+                for (int i = 0; i < store.size(); i++)
+                {
+                    hash = mix(hash, store.x[i]);
+                    hash = mix(hash, store.y[i]);
+                }
+            }
+            else if (e instanceof EntityGroup)
+                hash = hash(hash, (EntityGroup) e);
+        }
+        return hash;
+    }
+
+    /**
+     * @return hash combined with the exact bits of a value (FNV-1a style, one long at a time)
+     */
+    private static long mix(long hash, double value)
+    {
+        hash ^= Double.doubleToLongBits(value);
+        hash *= 0x100000001b3L;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * Elapsed simulated time.
+     * @return the number of updates run so far multiplied by the update duration
+     */
+    public double getSimulatedTime()
+    {
+        return tickCount * game.fixedTimeStep;
+    }
+
+    /**
+     * @return false if the thread was interrupted, which stops the run
+     */
+    private static boolean sleep(long nanos)
+    {
+        try
+        {
+            Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+            return true;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
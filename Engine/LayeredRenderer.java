@@ -0,0 +1,265 @@
+package Engine;
+
+import Engine.Entites.Entity;
+import Engine.Entites.EntityGroup;
+import Engine.Entites.Sprites.Sprite;
+import Engine.Tools.Camera;
+
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+
+import java.util.Arrays;
+
+/**
+ *  Draws a game in two layers, instead of clearing the whole canvas and drawing every entity each frame:
+ *  <ul>
+ *  <li>a static layer (background color and entities that don't move, like the arena and towers),
+ *      drawn once into a cached image, and drawn again only after {@link #invalidate()}
+ *      or when entities are added to or removed from its group;</li>
+ *  <li>a dynamic layer (everything that moves), drawn on top of the cached image every frame.</li>
+ *  </ul>
+ *  With {@link #dirtyRectangles} on, the cached image is not copied to the whole canvas every frame,
+ *  but only to the areas where dynamic sprites were drawn in the previous frame;
+ *  the rest of the canvas still shows the static layer from before.
+ *  The area of a sprite is the circle around its corners, plus its {@link Sprite#drawMargin};
+ *  anything else drawn on the canvas after this renderer (an overlay, for example) must call
+ *  {@link #restoreAllNextFrame()}, or it stays on the canvas.
+ *  <p>
+ *  Used by {@link Game#render(double)} when {@link Game#layeredRenderer} is set.
+ */
+public class LayeredRenderer
+{
+    /**
+     * color (or other paint) under the static layer
+     */
+    public Paint background;
+
+    /**
+     * entities drawn into the cached image
+     */
+    public EntityGroup staticLayer;
+
+    /**
+     * entities drawn every frame
+     */
+    public EntityGroup dynamicLayer;
+
+    /**
+     * if true, only the areas covered by dynamic sprites are restored each frame
+     */
+    public boolean dirtyRectangles;
+
+    /**
+     * the static layer drawn into an image, and what it was drawn from
+     */
+    private WritableImage staticImage;
+    private Canvas staticCanvas;
+    private boolean staticValid;
+    private int staticModificationCount;
+    private double staticCameraX, staticCameraY;
+
+    /**
+     * areas (x, y, width, height, one after the other) covered by dynamic sprites
+     * in the previous frame and in the current frame
+     */
+    private double[] previousRegions, currentRegions;
+    private int previousRegionCount, currentRegionCount;
+
+    /**
+     * true if the previous frame drew something that has no known area (a label, for example)
+     */
+    private boolean previousNeedsFullRestore;
+
+    /**
+     * Create a renderer with the given layers.
+     * @param background color under the static layer
+     * @param staticLayer entities that don't move
+     * @param dynamicLayer entities drawn every frame
+     */
+    public LayeredRenderer(Paint background, EntityGroup staticLayer, EntityGroup dynamicLayer)
+    {
+        this.background = background;
+        this.staticLayer = staticLayer;
+        this.dynamicLayer = dynamicLayer;
+        this.dirtyRectangles = false;
+        this.staticValid = false;
+        this.previousRegions = new double[64];
+        this.currentRegions = new double[64];
+        this.previousNeedsFullRestore = true;
+    }
+
+    /**
+     * Draw the static layer again at the next frame;
+     * call after moving or changing a static entity.
+     */
+    public void invalidate()
+    {
+        staticValid = false;
+    }
+
+    /**
+     * Restore the whole canvas from the static layer at the next frame, instead of only the areas
+     * of dynamic sprites; for things drawn on top of this renderer's frame, whose area it doesn't know.
+     */
+    public void restoreAllNextFrame()
+    {
+        previousNeedsFullRestore = true;
+    }
+
+    /**
+     * Draw one frame.
+     * @param context GraphicsContext of the canvas to draw on
+     * @param alpha interpolation factor from previous update (0) to current update (1)
+     */
+    public void render(GraphicsContext context, double alpha)
+    {
+        render(context, alpha, null);
+    }
+
+    /**
+     * Draw one frame as seen through a camera.
+     * The static layer is drawn again whenever the camera has moved.
+     * @param context GraphicsContext of the canvas to draw on
+     * @param alpha interpolation factor from previous update (0) to current update (1)
+     * @param camera the visible part of the world; null to draw without camera
+     */
+    public void render(GraphicsContext context, double alpha, Camera camera)
+    {
+        double cameraX = (camera != null) ? camera.position.x : 0;
+        double cameraY = (camera != null) ? camera.position.y : 0;
+
+        Canvas canvas = context.getCanvas();
+        int width = (int) Math.ceil(canvas.getWidth());
+        int height = (int) Math.ceil(canvas.getHeight());
+
+        // apply pending additions/removals, so they are noticed below
+        staticLayer.flush();
+        dynamicLayer.flush();
+
+        boolean fullRestore = previousNeedsFullRestore || !dirtyRectangles;
+        if (!staticValid
+                || staticImage == null
+                || staticImage.getWidth() != width
+                || staticImage.getHeight() != height
+                || staticModificationCount != staticLayer.getModificationCount()
+                || staticCameraX != cameraX
+                || staticCameraY != cameraY)
+        {
+            renderStaticLayer(width, height, alpha, camera);
+            fullRestore = true;
+        }
+
+        // find where dynamic sprites are drawn in this frame
+        currentRegionCount = 0;
+        boolean needsFullRestore = !collectRegions(dynamicLayer, alpha, cameraX, cameraY, width, height);
+
+        context.setTransform(1, 0, 0, 1, 0, 0);
+        context.setGlobalAlpha(1);
+        if (fullRestore)
+            context.drawImage(staticImage, 0, 0);
+        else
+        {
+            // only where the previous frame drew dynamic sprites
+            for (int r = 0; r < previousRegionCount * 4; r += 4)
+            {
+                double x = previousRegions[r], y = previousRegions[r + 1];
+                double w = previousRegions[r + 2], h = previousRegions[r + 3];
+                context.drawImage(staticImage, x, y, w, h, x, y, w, h);
+            }
+        }
+
+        dynamicLayer.draw(context, alpha, camera);
+
+        // this frame's areas are the ones to restore next frame
+        double[] swap = previousRegions;
+        previousRegions = currentRegions;
+        currentRegions = swap;
+        previousRegionCount = currentRegionCount;
+        previousNeedsFullRestore = needsFullRestore;
+    }
+
+    /**
+     * Draw background and static entities into the cached image.
+     */
+    private void renderStaticLayer(int width, int height, double alpha, Camera camera)
+    {
+        if (staticCanvas == null || staticCanvas.getWidth() != width || staticCanvas.getHeight() != height)
+            staticCanvas = new Canvas(width, height);
+        if (staticImage == null || staticImage.getWidth() != width || staticImage.getHeight() != height)
+            staticImage = new WritableImage(width, height);
+
+        GraphicsContext staticContext = staticCanvas.getGraphicsContext2D();
+        staticContext.setTransform(1, 0, 0, 1, 0, 0);
+        staticContext.setGlobalAlpha(1);
+        staticContext.clearRect(0, 0, width, height);
+        staticContext.setFill(background);
+        staticContext.fillRect(0, 0, width, height);
+        staticLayer.draw(staticContext, alpha, camera);
+
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        staticCanvas.snapshot(parameters, staticImage);
+
+        staticValid = true;
+        staticModificationCount = staticLayer.getModificationCount();
+        staticCameraX = (camera != null) ? camera.position.x : 0;
+        staticCameraY = (camera != null) ? camera.position.y : 0;
+    }
+
+    /**
+     * Store the area covered by each visible sprite of a group (and nested groups).
+     * @return false if the group contains something else than sprites and groups,
+     *   whose area is unknown
+     */
+    private boolean collectRegions(EntityGroup group, double alpha,
+                                   double cameraX, double cameraY, int width, int height)
+    {
+        boolean known = true;
+        for (Entity e : group.getList())
+        {
+            if (e instanceof EntityGroup)
+                known &= collectRegions((EntityGroup) e, alpha, cameraX, cameraY, width, height);
+            else if (e instanceof Sprite)
+            {
+                Sprite s = (Sprite) e;
+                if (s.visible)
+                    addRegion(s, alpha, cameraX, cameraY, width, height);
+            }
+            else
+                known = false;
+        }
+        return known;
+    }
+
+    /**
+     * Store the area a sprite covers when drawn; any rotation fits in the circle around its corners,
+     * and its own drawing fits in its draw margin.
+     */
+    private void addRegion(Sprite s, double alpha, double cameraX, double cameraY, int width, int height)
+    {
+        double centerX = s.previousPosition.x + (s.position.x - s.previousPosition.x) * alpha - cameraX;
+        double centerY = s.previousPosition.y + (s.position.y - s.previousPosition.y) * alpha - cameraY;
+        // one extra pixel for anti-aliased edges
+        double radius = 0.5 * Math.sqrt(s.width * s.width + s.height * s.height) + Math.max(0, s.drawMargin) + 1;
+
+        double left = Math.max(0, Math.floor(centerX - radius));
+        double top = Math.max(0, Math.floor(centerY - radius));
+        double right = Math.min(width, Math.ceil(centerX + radius));
+        double bottom = Math.min(height, Math.ceil(centerY + radius));
+        if (right <= left || bottom <= top)
+            return;
+
+        int r = currentRegionCount * 4;
+        if (r + 4 > currentRegions.length)
+            currentRegions = Arrays.copyOf(currentRegions, currentRegions.length * 2);
+        currentRegions[r] = left;
+        currentRegions[r + 1] = top;
+        currentRegions[r + 2] = right - left;
+        currentRegions[r + 3] = bottom - top;
+        currentRegionCount++;
+    }
+}
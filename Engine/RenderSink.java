@@ -0,0 +1,16 @@
+package Engine;
+
+/**
+ *  Receives the frames of a game that runs without a window (see {@link HeadlessRunner}).
+ *  There is no canvas to draw on, so an implementation can record whatever it needs
+ *  from the game objects (positions, counts, ...) or simply do nothing.
+ */
+public interface RenderSink
+{
+    /**
+     * Called once per frame, after the updates of that frame.
+     * @param game the game being run; its groups hold the objects that would be drawn
+     * @param alpha interpolation factor from previous update (0) to current update (1)
+     */
+    public void render(Game game, double alpha);
+}
@@ -9,7 +9,8 @@ public interface Screen
 
     /**
      * Update game objects used in this particular screen.
-     * Runs 60 times per second (when possible).
+     * Runs {@link Game#fixedTimeStep} apart in simulation time
+     * (60 times per second by default), independent of the frame rate.
      */
     public void update();
 }
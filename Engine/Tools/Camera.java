@@ -0,0 +1,94 @@
+package Engine.Tools;
+
+/**
+ *  The part of the game world that is shown on the canvas.
+ *  Entities drawn through a camera are shifted by its position,
+ *  and sprites completely outside of its view are skipped (culled) without drawing.
+ */
+public class Camera
+{
+    /**
+     * world coordinates of the top-left corner of the view
+     */
+    public Vector position;
+
+    /**
+     * size of the view (normally the size of the canvas)
+     */
+    public double width, height;
+
+    /**
+     * number of sprites drawn / skipped since {@link #resetCounts()} (once per frame, by {@link Engine.Game})
+     */
+    public int drawnCount, culledCount;
+
+    /**
+     * Create a camera looking at the top-left corner of the world.
+     * @param width width of the view
+     * @param height height of the view
+     */
+    public Camera(double width, double height)
+    {
+        this.position = new Vector();
+        this.width = width;
+        this.height = height;
+        this.drawnCount = 0;
+        this.culledCount = 0;
+    }
+
+    /**
+     * Move the view so its top-left corner is at the given world coordinates.
+     * @param x x-coordinate of the top-left corner
+     * @param y y-coordinate of the top-left corner
+     */
+    public void setPosition(double x, double y)
+    {
+        position.setValues(x, y);
+    }
+
+    /**
+     * Move the view so its center is at the given world coordinates.
+     * @param x x-coordinate of the center
+     * @param y y-coordinate of the center
+     */
+    public void centerOn(double x, double y)
+    {
+        position.setValues(x - width / 2, y - height / 2);
+    }
+
+    /**
+     * Set the size of the view.
+     * @param width width of the view
+     * @param height height of the view
+     */
+    public void setSize(double width, double height)
+    {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Determine if a box (given by its center and half size) is at least partly in view.
+     * @param centerX x-coordinate of the center of the box
+     * @param centerY y-coordinate of the center of the box
+     * @param halfWidth half the width of the box
+     * @param halfHeight half the height of the box
+     * @return true if the box overlaps the view
+     */
+    public boolean canSee(double centerX, double centerY, double halfWidth, double halfHeight)
+    {
+        return centerX + halfWidth > position.x
+                && centerX - halfWidth < position.x + width
+                && centerY + halfHeight > position.y
+                && centerY - halfHeight < position.y + height;
+    }
+
+    /**
+     * Set the drawn and culled counts back to 0.
+     */
+    public void resetCounts()
+    {
+        drawnCount = 0;
+        culledCount = 0;
+    }
+}
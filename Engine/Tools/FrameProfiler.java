@@ -0,0 +1,447 @@
+package Engine.Tools;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  Measures how long each phase of a frame takes (game logic, updating groups, drawing, ...)
+ *  and counts things per frame (entities updated, entities drawn).
+ *  Every measurement goes into a {@link Histogram} of the most recent samples,
+ *  which reports percentiles (p50, p95, p99) and the maximum.
+ *  <p>
+ *  Measuring a phase looks like this; {@link #end(int, long)} returns the current time,
+ *  so phases that follow each other only read the clock once:
+ *  <pre>
+ *  long t = profiler.begin();
+ *  update();
+ *  t = profiler.end(updatePhase, t);
+ *  group.update(dt);
+ *  profiler.end(groupPhase, t);
+ *  </pre>
+ *  While {@link #enabled} is false (the default), these calls only test that flag.
+ *  <p>
+ *  Results can be read at any time, from any thread (recording never waits for a reader);
+ *  shown on the canvas with {@link #setOverlayVisible(boolean)};
+ *  or written to a file every few seconds with {@link #startDump(String, double, boolean)}.
+ */
+public class FrameProfiler
+{
+    /**
+     * Rolling record of the last {@link #capacity()} samples of one measurement.
+     * Written by one thread (the game loop), read by any thread without locking.
+     */
+    public static class Histogram
+    {
+        /**
+         * name of the measurement, as shown in the overlay and the dumps
+         */
+        public final String name;
+
+        /**
+         * true if samples are durations in nanoseconds, false if they are counts
+         */
+        public final boolean time;
+
+        /**
+         * the samples, used as a ring; a slot is published with lazySet, so readers never see half a value
+         */
+        private final AtomicLongArray samples;
+        private final int mask;
+
+        /**
+         * number of samples recorded so far; only written by the recording thread
+         */
+        private volatile long count;
+
+        /**
+         * Create an empty histogram.
+         * @param name name of the measurement
+         * @param time true if samples are durations in nanoseconds
+         * @param capacity number of samples kept; rounded up to a power of two
+         */
+        public Histogram(String name, boolean time, int capacity)
+        {
+            this.name = name;
+            this.time = time;
+            int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+            this.samples = new AtomicLongArray(size);
+            this.mask = size - 1;
+        }
+
+        /**
+         * Add a sample, replacing the oldest one when the histogram is full.
+         * @param value duration (nanoseconds) or count
+         */
+        public void record(long value)
+        {
+            long c = count;
+            samples.lazySet((int) c & mask, value);
+            count = c + 1;
+        }
+
+        /**
+         * @return the number of samples kept
+         */
+        public int capacity()
+        {
+            return mask + 1;
+        }
+
+        /**
+         * @return the total number of samples recorded
+         */
+        public long getCount()
+        {
+            return count;
+        }
+
+        /**
+         * Copy the kept samples, sorted from smallest to largest.
+         * @return the samples; empty if nothing was recorded yet
+         */
+        public long[] snapshot()
+        {
+            int n = (int) Math.min(count, mask + 1);
+            long[] copy = new long[n];
+            for (int i = 0; i < n; i++)
+                copy[i] = samples.get(i);
+            Arrays.sort(copy);
+            return copy;
+        }
+
+        /**
+         * Determine the value below which a fraction of the kept samples lie.
+         * @param fraction from 0 to 1 (0.95 for the 95th percentile)
+         * @return the percentile, or 0 if nothing was recorded yet
+         */
+        public long percentile(double fraction)
+        {
+            return percentile(snapshot(), fraction);
+        }
+
+        /**
+         * @return the largest of the kept samples, or 0 if nothing was recorded yet
+         */
+        public long max()
+        {
+            long[] sorted = snapshot();
+            return (sorted.length == 0) ? 0 : sorted[sorted.length - 1];
+        }
+
+        private static long percentile(long[] sorted, double fraction)
+        {
+            if (sorted.length == 0)
+                return 0;
+            int index = (int) Math.ceil(fraction * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+
+    /**
+     * if false, {@link #begin()} and {@link #end(int, long)} record nothing
+     */
+    public volatile boolean enabled;
+
+    /**
+     * number of samples kept by each histogram added from now on
+     */
+    public int historySize;
+
+    /**
+     * number of rendered frames between two refreshes of the overlay text
+     */
+    public int overlayRefreshFrames;
+
+    /**
+     * the measurements, in the order they were added
+     */
+    private final ArrayList<Histogram> histograms;
+
+    /**
+     * text drawn on the canvas, or null while the overlay was never shown
+     */
+    private Label overlay;
+    private boolean overlayVisible;
+    private int framesSinceOverlayRefresh;
+
+    /**
+     * writes dumps in the background
+     */
+    private ScheduledExecutorService dumpThread;
+    private ScheduledFuture<?> dumpTask;
+
+    /**
+     * Create a disabled profiler without measurements.
+     */
+    public FrameProfiler()
+    {
+        this.enabled = false;
+        this.historySize = 256;
+        this.overlayRefreshFrames = 30;
+        this.histograms = new ArrayList<Histogram>();
+    }
+
+    /**
+     * Add a measured duration.
+     * @param name name of the phase
+     * @return id to pass to {@link #end(int, long)}
+     */
+    public synchronized int addPhase(String name)
+    {
+        histograms.add(new Histogram(name, true, historySize));
+        return histograms.size() - 1;
+    }
+
+    /**
+     * Add a count measured once per frame (or per update).
+     * @param name name of the counter
+     * @return id to pass to {@link #count(int, long)}
+     */
+    public synchronized int addCounter(String name)
+    {
+        histograms.add(new Histogram(name, false, historySize));
+        return histograms.size() - 1;
+    }
+
+    /**
+     * Start measuring a phase.
+     * @return the current time (nanoseconds), or 0 if the profiler is disabled
+     */
+    public long begin()
+    {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Finish measuring a phase, and record its duration.
+     * @param phase id returned by {@link #addPhase(String)}
+     * @param start value returned by {@link #begin()} (or by the previous end)
+     * @return the current time, which is the start of the next phase; 0 if the profiler is disabled
+     */
+    public long end(int phase, long start)
+    {
+        if (!enabled)
+            return 0;
+        long now = System.nanoTime();
+        // enabled in the middle of a phase: nothing to measure yet
+        if (start != 0)
+            histograms.get(phase).record(now - start);
+        return now;
+    }
+
+    /**
+     * Record a count.
+     * @param counter id returned by {@link #addCounter(String)}
+     * @param value number counted
+     */
+    public void count(int counter, long value)
+    {
+        if (enabled)
+            histograms.get(counter).record(value);
+    }
+
+    /**
+     * Retrieve a measurement.
+     * @param id id returned by {@link #addPhase(String)} or {@link #addCounter(String)}
+     * @return its histogram
+     */
+    public Histogram getHistogram(int id)
+    {
+        return histograms.get(id);
+    }
+
+    /**
+     * Retrieve a measurement by name.
+     * @param name name given when the measurement was added
+     * @return its histogram, or null if there is none with this name
+     */
+    public synchronized Histogram getHistogram(String name)
+    {
+        for (Histogram h : histograms)
+            if (h.name.equals(name))
+                return h;
+        return null;
+    }
+
+    /**
+     * Show or hide the results on the canvas, in the top left corner;
+     * see {@link #drawOverlay(GraphicsContext)}.
+     * @param visible true to show the overlay
+     */
+    public void setOverlayVisible(boolean visible)
+    {
+        overlayVisible = visible;
+        if (visible && overlay == null)
+        {
+            overlay = new Label("Monospaced", 12);
+            overlay.fontColor = Color.WHITE;
+            overlay.setBorder(1, Color.BLACK);
+            overlay.setPosition(8, 16);
+        }
+        framesSinceOverlayRefresh = overlayRefreshFrames;
+    }
+
+    /**
+     * @return true if the overlay is shown
+     */
+    public boolean isOverlayVisible()
+    {
+        return overlayVisible;
+    }
+
+    /**
+     * Draw the overlay, if it is visible; call after everything else is drawn.
+     * Its text is only rebuilt every {@link #overlayRefreshFrames} frames.
+     * @param context GraphicsContext object that handles drawing to the canvas
+     */
+    public void drawOverlay(GraphicsContext context)
+    {
+        if (!overlayVisible)
+            return;
+        if (++framesSinceOverlayRefresh >= overlayRefreshFrames)
+        {
+            framesSinceOverlayRefresh = 0;
+            overlay.setText(enabled ? toString() : "profiler disabled");
+        }
+        overlay.draw(context);
+    }
+
+    /**
+     * Write the current results as CSV: a header line, then one line per measurement
+     * with name, unit, count, p50, p95, p99 and max (durations in milliseconds).
+     * @param out where to write
+     * @throws IOException if writing fails
+     */
+    public void writeCsv(Writer out) throws IOException
+    {
+        out.write("name,unit,count,p50,p95,p99,max\n");
+        for (Histogram h : copyHistograms())
+        {
+            long[] sorted = h.snapshot();
+            out.write(String.format(Locale.ROOT, "%s,%s,%d,%s,%s,%s,%s\n",
+                    h.name, h.time ? "ms" : "count", h.getCount(),
+                    format(h, Histogram.percentile(sorted, 0.50)),
+                    format(h, Histogram.percentile(sorted, 0.95)),
+                    format(h, Histogram.percentile(sorted, 0.99)),
+                    format(h, Histogram.percentile(sorted, 1))));
+        }
+    }
+
+    /**
+     * Write the current results as a JSON object, with one member per measurement
+     * (durations in milliseconds).
+     * @param out where to write
+     * @throws IOException if writing fails
+     */
+    public void writeJson(Writer out) throws IOException
+    {
+        out.write("{\n");
+        ArrayList<Histogram> list = copyHistograms();
+        for (int i = 0; i < list.size(); i++)
+        {
+            Histogram h = list.get(i);
+            long[] sorted = h.snapshot();
+            out.write(String.format(Locale.ROOT,
+                    "  \"%s\": {\"unit\": \"%s\", \"count\": %d, \"p50\": %s, \"p95\": %s, \"p99\": %s, \"max\": %s}%s\n",
+                    h.name.replace("\\", "\\\\").replace("\"", "\\\""),
+                    h.time ? "ms" : "count", h.getCount(),
+                    format(h, Histogram.percentile(sorted, 0.50)),
+                    format(h, Histogram.percentile(sorted, 0.95)),
+                    format(h, Histogram.percentile(sorted, 0.99)),
+                    format(h, Histogram.percentile(sorted, 1)),
+                    (i < list.size() - 1) ? "," : ""));
+        }
+        out.write("}\n");
+    }
+
+    /**
+     * Write the results to a file every few seconds, on a background thread,
+     * replacing the previous content of the file. Replaces a dump started before.
+     * @param fileName file to write
+     * @param intervalSeconds time between two dumps
+     * @param json true for JSON, false for CSV
+     */
+    public synchronized void startDump(String fileName, double intervalSeconds, boolean json)
+    {
+        stopDump();
+        if (dumpThread == null)
+        {
+            dumpThread = Executors.newSingleThreadScheduledExecutor(r ->
+            {
+                Thread t = new Thread(r, "FrameProfiler dump");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        long period = Math.max(1, (long) (intervalSeconds * 1000));
+        dumpTask = dumpThread.scheduleAtFixedRate(() ->
+        {
+            try (Writer out = new FileWriter(fileName))
+            {
+                if (json)
+                    writeJson(out);
+                else
+                    writeCsv(out);
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop writing dumps started with {@link #startDump(String, double, boolean)}.
+     */
+    public synchronized void stopDump()
+    {
+        if (dumpTask != null)
+            dumpTask.cancel(false);
+        dumpTask = null;
+    }
+
+    /**
+     * @return one line per measurement, with its p50, p95, p99 and max
+     */
+    public String toString()
+    {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "%-34s %8s %8s %8s %8s%n", "(ms / count)", "p50", "p95", "p99", "max"));
+        for (Histogram h : copyHistograms())
+        {
+            long[] sorted = h.snapshot();
+            text.append(String.format(Locale.ROOT, "%-34s %8s %8s %8s %8s%n",
+                    h.name,
+                    format(h, Histogram.percentile(sorted, 0.50)),
+                    format(h, Histogram.percentile(sorted, 0.95)),
+                    format(h, Histogram.percentile(sorted, 0.99)),
+                    format(h, Histogram.percentile(sorted, 1))));
+        }
+        return text.toString();
+    }
+
+    private synchronized ArrayList<Histogram> copyHistograms()
+    {
+        return new ArrayList<Histogram>(histograms);
+    }
+
+    /**
+     * @return a sample as text; durations in milliseconds
+     */
+    private static String format(Histogram h, long value)
+    {
+        return h.time ? String.format(Locale.ROOT, "%.3f", value / 1e6) : Long.toString(value);
+    }
+}
@@ -2,26 +2,110 @@ package Engine.Tools;
 
 import javafx.event.EventHandler;
 import javafx.scene.Scene;
+import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.HashMap;
 
 
 /**
  * A structure for storing and updating keyboard state:
  *  which keys are currently pressed or just pressed/released.
+ *  <p>
+ *  The state of each key is stored in arrays indexed by {@link KeyCode#ordinal()},
+ *  together with the number of the update at which it was last pressed and released,
+ *  so every query is a single array lookup and nothing is allocated.
+ *  The methods taking a key name (String) are kept for existing code and
+ *  look up the KeyCode first; the KeyCode methods are faster.
+ *  <p>
+ *  Events from the window are passed to the game through an {@link InputEventQueue},
+ *  with the time they were received; {@link #update()} applies them in that order.
+ *  So the window events may arrive on another thread than the one running the game update.
  *  //TODO :  mouse events can be added here later
  */
 public class Input
 {
-    public ArrayList<String> justPressedQueue;
-    public ArrayList<String> justReleasedQueue;
-    public ArrayList<String> justPressedList;
-    public ArrayList<String> stillPressedList;
-    public ArrayList<String> justReleasedList;
-    private final LinkedList<Vector> clicked;
+    /**
+     * every key, by ordinal
+     */
+    private static final KeyCode[] keyCodes = KeyCode.values();
+
+    /**
+     * KeyCode of each key name (the names returned by {@link KeyCode#toString()})
+     */
+    private static final HashMap<String, KeyCode> keyCodesByName = new HashMap<String, KeyCode>();
+    static
+    {
+        for (KeyCode code : keyCodes)
+            keyCodesByName.put(code.toString(), code);
+    }
+
+    /**
+     * events received since the last update, in the order they happened; processed by {@link #update()}
+     */
+    public final InputEventQueue events;
+
+    /**
+     * if set, receives every event applied by {@link #update()}, to record a match; null by default
+     */
+    public InputRecorder recorder;
+
+    /**
+     * true for each key that is held down
+     */
+    private final boolean[] down;
+
+    /**
+     * number of the update at which each key was last pressed / released
+     */
+    private final long[] pressedFrame, releasedFrame;
+
+    /**
+     * {@link System#nanoTime()} at which each key was last pressed
+     */
+    private final long[] pressedNanoTime;
+
+    /**
+     * {@link System#nanoTime()} of the oldest and newest event applied by the last {@link #update()};
+     * 0 if there were none. {@code System.nanoTime() - oldestEventNanoTime} taken when the update's
+     * result is shown gives the input latency.
+     */
+    public long oldestEventNanoTime, newestEventNanoTime;
+
+    /**
+     * clicks applied by {@link #update()} and not yet read by {@link #getNextClick()} or {@link #pollClick(Vector)}:
+     * coordinates and time stamps, from index clickFirst to clickCount - 1
+     */
+    private double[] clickX, clickY;
+    private long[] clickNanoTime;
+    private int clickFirst, clickCount;
+
+    /**
+     * number of the current update; starts at 1, so a key that was never pressed is not "just pressed"
+     */
+    private long frame;
+
+    /**
+     * Initialize object without listening to any window;
+     * events can still be added with {@link #pressKey(KeyCode)}, {@link #releaseKey(KeyCode)}
+     * and {@link #click(double, double)} (useful for benchmarks and tests).
+     */
+    public Input()
+    {
+        events = new InputEventQueue(1024);
+        //data of the queue above will be processed into below arrays
+        down            = new boolean[keyCodes.length];
+        pressedFrame    = new long[keyCodes.length];
+        releasedFrame   = new long[keyCodes.length];
+        pressedNanoTime = new long[keyCodes.length];
+        frame = 1;
+
+        clickX = new double[16];
+        clickY = new double[16];
+        clickNanoTime = new long[16];
+    }
 
     /**
      * Initialize object and activate event listeners.
@@ -29,35 +113,19 @@ public class Input
      */
     public Input(Scene listeningScene)
     {
-        justPressedQueue  = new ArrayList<String>();
-        justReleasedQueue = new ArrayList<String>();
-        //data of the Queues above will be processed using below lists
-        justPressedList   = new ArrayList<String>();
-        stillPressedList  = new ArrayList<String>();
-        justReleasedList  = new ArrayList<String>();
-
-        clicked = new LinkedList<>();
+        this();
         // We want to call a method onKeyPressed.
-        // Example Strings: UP, LEFT, Q, DIGIT1, SPACE, SHIFT
         /*Here when a key is pressed, it takes the KeyEvent input and runs those lines of codes
         * actually because that onKeyPressed requires an object as input parameter, we do this kind of writing
         * later in compile time it wraps it in a class and then calls the method on that particular class. */
 
         //this methods are listeners, when they execute in constructor, they are on going till end.
         listeningScene.setOnKeyPressed(
-                (KeyEvent event) ->
-                {
-                    String keyName = event.getCode().toString();
-                    justPressedQueue.add(keyName); // We will process this later in update();
-                }
+                (KeyEvent event) -> pressKey(event.getCode()) // We will process this later in update();
         );
 
         listeningScene.setOnKeyReleased(
-                (KeyEvent event) ->
-                {
-                    String keyName = event.getCode().toString();
-                    justReleasedQueue.add(keyName);
-                }
+                (KeyEvent event) -> releaseKey(event.getCode())
         );
 
 
@@ -65,7 +133,7 @@ public class Input
                 new EventHandler<MouseEvent>() {
                     @Override
                     public void handle(MouseEvent mouseEvent) {
-                        clicked.addLast(new Vector(mouseEvent.getSceneX(),mouseEvent.getSceneY()));
+                        click(mouseEvent.getSceneX(), mouseEvent.getSceneY());
                     }
                 }
         );
@@ -73,7 +141,36 @@ public class Input
 
     }   //end of constructor
 
+    /**
+     * Store a key press, as if it came from the window; it shows up at the next {@link #update()}.
+     * Must be called from the thread that receives window events (see {@link InputEventQueue}).
+     * @param code the key that was pressed
+     */
+    public void pressKey(KeyCode code)
+    {
+        events.offer(InputEventQueue.KEY_PRESSED, code.ordinal(), 0, 0, System.nanoTime());
+    }
 
+    /**
+     * Store a key release, as if it came from the window; it shows up at the next {@link #update()}.
+     * Must be called from the thread that receives window events (see {@link InputEventQueue}).
+     * @param code the key that was released
+     */
+    public void releaseKey(KeyCode code)
+    {
+        events.offer(InputEventQueue.KEY_RELEASED, code.ordinal(), 0, 0, System.nanoTime());
+    }
+
+    /**
+     * Store a mouse click, as if it came from the window; it shows up at the next {@link #update()}.
+     * Must be called from the thread that receives window events (see {@link InputEventQueue}).
+     * @param x x-coordinate of the click in the scene
+     * @param y y-coordinate of the click in the scene
+     */
+    public void click(double x, double y)
+    {
+        events.offer(InputEventQueue.MOUSE_CLICKED, 0, x, y, System.nanoTime());
+    }
 
     /**
      *  Update input state information.
@@ -83,40 +180,111 @@ public class Input
     //the listening methods in the constructor gathers data for this method.
     //also this method will be executed in each frame
     {
-        // clear previous discrete event status
-        justPressedList.clear();
-        justReleasedList.clear();
+        // a new update: keys stamped with an older number are no longer "just" pressed or released
+        frame++;
 
-        // update current event status
-        for (String keyName : justPressedQueue)
+        oldestEventNanoTime = 0;
+        newestEventNanoTime = 0;
+
+        // update current event status, in the order the events happened
+        while (events.poll())
         {
-            // avoid multiple keypress events while holding key
-            // avoid duplicate entries in key pressed list
-            if ( !stillPressedList.contains(keyName) )
+            if (oldestEventNanoTime == 0)
+                oldestEventNanoTime = events.nanoTime;
+            newestEventNanoTime = events.nanoTime;
+
+            if (recorder != null)
+                recorder.recordEvent(events.type, events.code, events.x, events.y);
+
+            int key = events.code;
+            switch (events.type)
             {
-                justPressedList.add(keyName);
-                stillPressedList.add(keyName);
+                case InputEventQueue.KEY_PRESSED:
+                    // avoid multiple keypress events while holding key
+                    if (!down[key])
+                    {
+                        down[key] = true;
+                        pressedFrame[key] = frame;
+                        pressedNanoTime[key] = events.nanoTime;
+                    }
+                    break;
+                case InputEventQueue.KEY_RELEASED:
+                    down[key] = false;
+                    releasedFrame[key] = frame;
+                    break;
+                case InputEventQueue.MOUSE_CLICKED:
+                    addClick(events.x, events.y, events.nanoTime);
+                    break;
             }
         }
+    }
 
-        for (String keyName : justReleasedQueue)
+    /**
+     * Keep a click until it is read by {@link #getNextClick()}.
+     */
+    private void addClick(double x, double y, long nanoTime)
+    {
+        // all clicks read: start from the beginning again
+        if (clickFirst == clickCount)
         {
-            stillPressedList.remove(keyName);
-            justReleasedList.add(keyName);
+            clickFirst = 0;
+            clickCount = 0;
         }
-
-        // clear the queues (not lists)  used to store events
-        justPressedQueue.clear();
-        justReleasedQueue.clear();
+        if (clickCount == clickX.length)
+        {
+            int n = clickCount * 2;
+            clickX = Arrays.copyOf(clickX, n);
+            clickY = Arrays.copyOf(clickY, n);
+            clickNanoTime = Arrays.copyOf(clickNanoTime, n);
+        }
+        clickX[clickCount] = x;
+        clickY[clickCount] = y;
+        clickNanoTime[clickCount] = nanoTime;
+        clickCount++;
     }
 
+    /**
+     * Determine if key has been pressed / moved to down position (a discrete action).
+     * @param code the key
+     * @return true if key was just pressed
+     */
+    public boolean isKeyJustPressed(KeyCode code)
+    {  return pressedFrame[code.ordinal()] == frame;  }
+
+    /**
+     * Determine if key is currently being pressed / held down (a continuous action).
+     * @param code the key
+     * @return true if key is currently pressed
+     */
+    public boolean isKeyStillPressed(KeyCode code)
+    {  return down[code.ordinal()];  }
+
+    /**
+     * Determine if key has been released / returned to up position (a discrete action).
+     * @param code the key
+     * @return true if key was just released
+     */
+    public boolean isKeyJustReleased(KeyCode code)
+    {  return releasedFrame[code.ordinal()] == frame;  }
+
+    /**
+     * Determine when a key was last pressed.
+     * @param code the key
+     * @return {@link System#nanoTime()} at which the key was pressed, or 0 if it never was
+     */
+    public long getKeyPressedNanoTime(KeyCode code)
+    {  return pressedNanoTime[code.ordinal()];  }
+
     /**
      * Determine if key has been pressed / moved to down position (a discrete action).
      * @param keyName name of corresponding key (examples: "LEFT", "A", "DIGIT1", "SPACE", "SHIFT")
      * @return true if key was just pressed
      */
     public boolean isKeyJustPressed(String keyName)
-    {  return justPressedList.contains(keyName);  }
+    {
+        KeyCode code = keyCodesByName.get(keyName);
+        return code != null && isKeyJustPressed(code);
+    }
 
     /**
      * Determine if key is currently being pressed / held down (a continuous action).
@@ -124,7 +292,10 @@ public class Input
      * @return true if key is currently pressed
      */
     public boolean isKeyStillPressed(String keyName)  //still was not here
-    {  return stillPressedList.contains(keyName);  }
+    {
+        KeyCode code = keyCodesByName.get(keyName);
+        return code != null && isKeyStillPressed(code);
+    }
 
     /**
      * Determine if key has been released / returned to up position (a discrete action).
@@ -132,17 +303,47 @@ public class Input
      * @return true if key was just released
      */
     public boolean isKeyJustReleased(String keyName)
-    {  return justReleasedList.contains(keyName);  }
+    {
+        KeyCode code = keyCodesByName.get(keyName);
+        return code != null && isKeyJustReleased(code);
+    }
 
 
+    /**
+     * Take the oldest click that was not read yet.
+     * A new Vector is returned every time; code that reads clicks every frame
+     * can use {@link #pollClick(Vector)} instead, which allocates nothing.
+     * @return position of the click in the scene, or null if there is none
+     */
     public Vector getNextClick(){
-        if(clicked.isEmpty()) return null;
-        else {
-            Vector res = clicked.getFirst();
-            clicked.removeFirst();
-            return res;
+        if (clickFirst == clickCount)
+            return null;
+        Vector click = new Vector();
+        pollClick(click);
+        return click;
+    }
 
-        }
+    /**
+     * Take the oldest click that was not read yet, without allocating.
+     * @param out receives the position of the click in the scene
+     * @return false if there was no click (out is not changed)
+     */
+    public boolean pollClick(Vector out)
+    {
+        if (clickFirst == clickCount)
+            return false;
+        out.setValues(clickX[clickFirst], clickY[clickFirst]);
+        clickFirst++;
+        return true;
+    }
+
+    /**
+     * Determine when the click that {@link #getNextClick()} returns next happened.
+     * @return {@link System#nanoTime()} of the click, or 0 if there is none
+     */
+    public long getNextClickNanoTime()
+    {
+        return (clickFirst == clickCount) ? 0 : clickNanoTime[clickFirst];
     }
 
 }
@@ -0,0 +1,141 @@
+package Engine.Tools;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  A bounded queue of input events (key presses and releases, mouse clicks) stored in primitive arrays,
+ *  passed from the thread that receives them (the JavaFX thread) to the thread that runs the game update.
+ *  <p>
+ *  Exactly one thread may call {@link #offer(int, int, double, double, long)} (the producer),
+ *  and exactly one thread may call {@link #poll()} (the consumer); they don't lock or wait for each other,
+ *  and nothing is allocated. When the queue is full, new events are dropped and counted in {@link #getDroppedCount()}.
+ *  <p>
+ *  {@link #poll()} copies the oldest event into the fields {@link #type}, {@link #code},
+ *  {@link #x}, {@link #y} and {@link #nanoTime}, which stay valid until the next poll.
+ */
+public class InputEventQueue
+{
+    /**
+     * event types
+     */
+    public static final int KEY_PRESSED = 0;
+    public static final int KEY_RELEASED = 1;
+    public static final int MOUSE_CLICKED = 2;
+
+    /**
+     * the events, used as a ring
+     */
+    private final int[] types, codes;
+    private final double[] xs, ys;
+    private final long[] times;
+    private final int mask;
+
+    /**
+     * number of events read so far (written by the consumer) and written so far (written by the producer);
+     * an event is published by lazySet of tail after its slot is written
+     */
+    private final AtomicLong head, tail;
+
+    /**
+     * value of head last seen by the producer, so it only reads head again when the queue looks full
+     */
+    private long cachedHead;
+
+    /**
+     * number of events dropped because the queue was full; written by the producer
+     */
+    private volatile long dropped;
+
+    /**
+     * the event returned by the last {@link #poll()}:
+     * its type, key ordinal (for key events), scene coordinates (for clicks),
+     * and {@link System#nanoTime()} when it was received
+     */
+    public int type, code;
+    public double x, y;
+    public long nanoTime;
+
+    /**
+     * Create an empty queue.
+     * @param capacity maximum number of events waiting; rounded up to a power of two
+     */
+    public InputEventQueue(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        types = new int[size];
+        codes = new int[size];
+        xs = new double[size];
+        ys = new double[size];
+        times = new long[size];
+        mask = size - 1;
+        head = new AtomicLong();
+        tail = new AtomicLong();
+    }
+
+    /**
+     * Add an event; only called by the producer thread.
+     * @param type {@link #KEY_PRESSED}, {@link #KEY_RELEASED} or {@link #MOUSE_CLICKED}
+     * @param code key ordinal, or 0 for clicks
+     * @param x x-coordinate of a click, or 0
+     * @param y y-coordinate of a click, or 0
+     * @param nanoTime when the event was received
+     * @return false if the queue was full and the event was dropped
+     */
+    public boolean offer(int type, int code, double x, double y, long nanoTime)
+    {
+        long t = tail.get();
+        if (t - cachedHead > mask)
+        {
+            cachedHead = head.get();
+            if (t - cachedHead > mask)
+            {
+                dropped++;
+                return false;
+            }
+        }
+        int i = (int) t & mask;
+        types[i] = type;
+        codes[i] = code;
+        xs[i] = x;
+        ys[i] = y;
+        times[i] = nanoTime;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Take the oldest event; only called by the consumer thread.
+     * @return true if there was an event (now in the public fields), false if the queue is empty
+     */
+    public boolean poll()
+    {
+        long h = head.get();
+        if (h == tail.get())
+            return false;
+        int i = (int) h & mask;
+        type = types[i];
+        code = codes[i];
+        x = xs[i];
+        y = ys[i];
+        nanoTime = times[i];
+        // the slot may be written again from now on
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    /**
+     * @return the number of events waiting (may be out of date by the time it is used)
+     */
+    public int size()
+    {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return the number of events dropped because the queue was full
+     */
+    public long getDroppedCount()
+    {
+        return dropped;
+    }
+}
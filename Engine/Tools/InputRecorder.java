@@ -0,0 +1,223 @@
+package Engine.Tools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ *  Records the input of a game, update by update, into a compact binary file,
+ *  so the same match can be run again with {@link InputReplayer}
+ *  (for example headless, with {@link Engine.HeadlessRunner#replay(InputReplayer)}).
+ *  <p>
+ *  Set it as {@link Input#recorder}; {@link Input#update()} then passes it every key and click event
+ *  it applies, and {@link Engine.Game#tick(double)} ends each update with {@link #endTick(double)}.
+ *  Call {@link #close()} when the match is over; the recorder can stay set afterwards, it then records nothing.
+ *  <p>
+ *  The file is written through a memory-mapped buffer. Each update takes a few bytes:
+ *  the elapsed time (as the difference from the previous one, which is 0 with a fixed time step),
+ *  the number of events, and for each event its type and key, as variable-length integers;
+ *  clicks add their coordinates. The end of the data is kept up to date in the header,
+ *  so a recording is readable even if the game stops without closing it.
+ */
+public class InputRecorder
+{
+    /**
+     * first bytes of every recording, and version of the format
+     */
+    static final int MAGIC = 0x42474952; // "BGIR"
+    static final int VERSION = 1;
+
+    /**
+     * size of the header: magic, version, end of the data
+     */
+    static final int HEADER_SIZE = 16;
+
+    private final FileChannel channel;
+
+    /**
+     * the mapped part of the file; null once closed
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * events of the current update, until {@link #endTick(double)} writes them
+     */
+    private int[] types, codes;
+    private double[] xs, ys;
+    private int eventCount;
+
+    /**
+     * elapsed time of the previous update, as raw bits
+     */
+    private long previousDeltaBits;
+
+    /**
+     * number of updates recorded
+     */
+    public long tickCount;
+
+    /**
+     * Create (or replace) a recording file.
+     * @param fileName file to write
+     * @throws IOException if the file can't be created
+     */
+    public InputRecorder(String fileName) throws IOException
+    {
+        this(Paths.get(fileName));
+    }
+
+    /**
+     * Create (or replace) a recording file.
+     * @param file file to write
+     * @throws IOException if the file can't be created
+     */
+    public InputRecorder(Path file) throws IOException
+    {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 64 * 1024);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(HEADER_SIZE);
+
+        types = new int[16];
+        codes = new int[16];
+        xs = new double[16];
+        ys = new double[16];
+    }
+
+    /**
+     * Store an event applied during the current update; called by {@link Input#update()}.
+     * Does nothing once the recording is closed.
+     * @param type event type (see {@link InputEventQueue})
+     * @param code key ordinal
+     * @param x x-coordinate of a click
+     * @param y y-coordinate of a click
+     */
+    public void recordEvent(int type, int code, double x, double y)
+    {
+        if (buffer == null)
+            return;
+        if (eventCount == types.length)
+        {
+            int n = eventCount * 2;
+            types = Arrays.copyOf(types, n);
+            codes = Arrays.copyOf(codes, n);
+            xs = Arrays.copyOf(xs, n);
+            ys = Arrays.copyOf(ys, n);
+        }
+        types[eventCount] = type;
+        codes[eventCount] = code;
+        xs[eventCount] = x;
+        ys[eventCount] = y;
+        eventCount++;
+    }
+
+    /**
+     * Write the current update (its elapsed time and events) to the file;
+     * called by {@link Engine.Game#tick(double)}. Does nothing once the recording is closed.
+     * @param dt elapsed time of the update
+     * @throws UncheckedIOException if the file can't grow
+     */
+    public void endTick(double dt)
+    {
+        if (buffer == null)
+            return;
+        // at most 10 bytes per variable-length integer, plus 16 per click
+        ensureRemaining(20 + eventCount * 26);
+
+        long deltaBits = Double.doubleToLongBits(dt);
+        putVarLong(zigZag(deltaBits - previousDeltaBits));
+        previousDeltaBits = deltaBits;
+
+        putVarLong(eventCount);
+        for (int i = 0; i < eventCount; i++)
+        {
+            putVarLong(((long) codes[i] << 2) | types[i]);
+            if (types[i] == InputEventQueue.MOUSE_CLICKED)
+            {
+                buffer.putDouble(xs[i]);
+                buffer.putDouble(ys[i]);
+            }
+        }
+        eventCount = 0;
+        tickCount++;
+
+        // end of the data, so far
+        buffer.putLong(8, buffer.position());
+    }
+
+    /**
+     * Finish the recording: write it to disk and cut the file to the size of the data.
+     * Closing it again does nothing.
+     * @throws IOException if writing fails
+     */
+    public void close() throws IOException
+    {
+        if (buffer == null)
+            return;
+        int end = buffer.position();
+        buffer.force();
+        buffer = null;
+        try
+        {
+            channel.truncate(end);
+        }
+        catch (IOException e)
+        {
+            // some systems don't allow it while the file is mapped; the header still marks the end
+        }
+        channel.close();
+    }
+
+    /**
+     * @return true once {@link #close()} was called
+     */
+    public boolean isClosed()
+    {
+        return buffer == null;
+    }
+
+    /**
+     * Map a larger part of the file when the current one is almost full.
+     */
+    private void ensureRemaining(int bytes)
+    {
+        if (buffer.remaining() >= bytes)
+            return;
+        try
+        {
+            int position = buffer.position();
+            long size = Math.max((long) buffer.capacity() * 2, position + (long) bytes);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.position(position);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void putVarLong(long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * @return value with the sign moved to the lowest bit, so small negative numbers stay short
+     */
+    private static long zigZag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+}
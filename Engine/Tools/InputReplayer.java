@@ -0,0 +1,133 @@
+package Engine.Tools;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ *  Plays back a recording made by {@link InputRecorder}, update by update:
+ *  {@link #nextTick(Input)} puts the events of the next update into an {@link Input},
+ *  and gives the elapsed time of that update in {@link #tickDelta}.
+ *  <p>
+ *  {@link Engine.HeadlessRunner#replay(InputReplayer)} does this for a whole recording, as fast as possible.
+ *  Starting from the same initial state, a game whose updates only depend on the elapsed time
+ *  and the input (no random numbers without a fixed seed, no wall clock) ends in exactly the same state;
+ *  {@link Engine.HeadlessRunner#stateHash()} can be compared to check that.
+ */
+public class InputReplayer
+{
+    private final MappedByteBuffer buffer;
+
+    /**
+     * end of the recorded data in the file
+     */
+    private final int end;
+
+    /**
+     * elapsed time of the previous update, as raw bits
+     */
+    private long previousDeltaBits;
+
+    /**
+     * elapsed time of the update returned by the last {@link #nextTick(Input)}
+     */
+    public double tickDelta;
+
+    /**
+     * number of updates played back so far
+     */
+    public long tickCount;
+
+    /**
+     * Open a recording.
+     * @param fileName file written by {@link InputRecorder}
+     * @throws IOException if the file can't be read or is not a recording
+     */
+    public InputReplayer(String fileName) throws IOException
+    {
+        this(Paths.get(fileName));
+    }
+
+    /**
+     * Open a recording.
+     * @param file file written by {@link InputRecorder}
+     * @throws IOException if the file can't be read or is not a recording
+     */
+    public InputReplayer(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < InputRecorder.HEADER_SIZE
+                || buffer.getInt() != InputRecorder.MAGIC
+                || buffer.getInt() != InputRecorder.VERSION)
+            throw new IOException("not an input recording: " + file);
+        end = (int) buffer.getLong();
+        if (end < InputRecorder.HEADER_SIZE || end > buffer.capacity())
+            throw new IOException("damaged input recording: " + file);
+    }
+
+    /**
+     * Determine if there are updates left to play back.
+     * @return true if {@link #nextTick(Input)} has an update to return
+     */
+    public boolean hasNextTick()
+    {
+        return buffer.position() < end;
+    }
+
+    /**
+     * Read the next update: put its events into the queue of an Input (they are applied by the
+     * next {@link Input#update()}), and its elapsed time into {@link #tickDelta}.
+     * Must be called from the only thread that adds events to that Input (see {@link InputEventQueue}).
+     * @param input receives the events
+     * @return false if the recording is over (nothing was read)
+     */
+    public boolean nextTick(Input input)
+    {
+        if (!hasNextTick())
+            return false;
+
+        long deltaBits = previousDeltaBits + unZigZag(getVarLong());
+        previousDeltaBits = deltaBits;
+        tickDelta = Double.longBitsToDouble(deltaBits);
+
+        long count = getVarLong();
+        for (long i = 0; i < count; i++)
+        {
+            long header = getVarLong();
+            int type = (int) (header & 3);
+            int code = (int) (header >>> 2);
+            double x = 0, y = 0;
+            if (type == InputEventQueue.MOUSE_CLICKED)
+            {
+                x = buffer.getDouble();
+                y = buffer.getDouble();
+            }
+            input.events.offer(type, code, x, y, System.nanoTime());
+        }
+        tickCount++;
+        return true;
+    }
+
+    private long getVarLong()
+    {
+        long value = 0;
+        for (int shift = 0; ; shift += 7)
+        {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+
+    private static long unZigZag(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,143 @@
+package Engine.Tools;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ *  Keeps objects that are no longer used, so they can be used again instead of creating new ones.
+ *  Spawning and removing many short-lived objects (sprites, actions, vectors) then
+ *  doesn't produce garbage, and the garbage collector doesn't interrupt the game.
+ *  <p>
+ *  {@link #acquire()} returns a kept object (a hit) or a new one (a miss);
+ *  {@link #release(Object)} resets an object and keeps it for later.
+ *  An object must not be used anymore after it is released, and must be released only once
+ *  (the pooled types of the engine keep a flag for that: {@link Vector#free()}, {@link Engine.Entites.Sprites.Action#free()}
+ *  and {@link Engine.Entites.Sprites.Sprite#recycle()} do nothing for an object that is not out of the pool).
+ *  A pool is thread-safe: sprites updated in parallel by their group can free their actions.
+ * @param <T> type of the pooled objects
+ */
+public class Pool<T>
+{
+    /**
+     * creates new objects when the pool is empty
+     */
+    private final Supplier<T> factory;
+
+    /**
+     * puts a released object back in its initial state
+     */
+    private final Consumer<T> reset;
+
+    /**
+     * objects ready to be used again
+     */
+    private Object[] free;
+    private int freeCount;
+
+    /**
+     * maximum number of objects kept; objects released beyond that are left to the garbage collector
+     */
+    public int maximumSize;
+
+    /**
+     * number of acquired objects that were reused (hits) or newly created (misses),
+     * and of released objects that were not kept because the pool was full (discarded)
+     */
+    public long hits, misses, discarded;
+
+    /**
+     * Create an empty pool.
+     * @param factory creates a new object
+     * @param reset puts a released object back in its initial state; may be null
+     * @param maximumSize maximum number of objects kept
+     */
+    public Pool(Supplier<T> factory, Consumer<T> reset, int maximumSize)
+    {
+        this.factory = factory;
+        this.reset = reset;
+        this.maximumSize = maximumSize;
+        this.free = new Object[Math.min(maximumSize, 16)];
+        this.freeCount = 0;
+    }
+
+    /**
+     * Retrieve an object from the pool, or create one if the pool is empty.
+     * @return an object in its initial state
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T acquire()
+    {
+        if (freeCount == 0)
+        {
+            misses++;
+            return factory.get();
+        }
+        hits++;
+        T obj = (T) free[--freeCount];
+        free[freeCount] = null;
+        return obj;
+    }
+
+    /**
+     * Reset an object and keep it for a later {@link #acquire()}.
+     * @param obj an object that is no longer used
+     */
+    public synchronized void release(T obj)
+    {
+        if (obj == null)
+            return;
+        if (freeCount >= maximumSize)
+        {
+            discarded++;
+            return;
+        }
+        if (reset != null)
+            reset.accept(obj);
+        if (freeCount == free.length)
+            free = Arrays.copyOf(free, Math.min(maximumSize, free.length * 2));
+        free[freeCount++] = obj;
+    }
+
+    /**
+     * Create objects ahead of time (for example during loading), so later acquires are hits.
+     * @param count number of objects the pool should hold
+     */
+    public synchronized void fill(int count)
+    {
+        while (freeCount < Math.min(count, maximumSize))
+        {
+            if (freeCount == free.length)
+                free = Arrays.copyOf(free, Math.min(maximumSize, free.length * 2));
+            free[freeCount++] = factory.get();
+        }
+    }
+
+    /**
+     * Determine the number of objects ready to be reused.
+     * @return the number of kept objects
+     */
+    public synchronized int available()
+    {
+        return freeCount;
+    }
+
+    /**
+     * Set all counters back to 0.
+     */
+    public synchronized void resetCounters()
+    {
+        hits = 0;
+        misses = 0;
+        discarded = 0;
+    }
+
+    /**
+     * Convert the counters of this pool to a String.
+     */
+    public synchronized String toString()
+    {
+        return "Pool[available=" + freeCount + ", hits=" + hits
+                + ", misses=" + misses + ", discarded=" + discarded + "]";
+    }
+}
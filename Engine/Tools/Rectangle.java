@@ -1,7 +1,5 @@
 package Engine.Tools;
 
-import java.util.Arrays;
-
 /**
  *  A rectangle shape, defined by its position and size,
  *  particularly useful in collision detection.
@@ -113,22 +111,114 @@ public class Rectangle
     }
 
     /**
-     * Calculates the minimum translation vector to translate when rectangles are overlapping by
-     * calculating each vector and then use Arrays.sort(); method to sort it and then return the first element.
+     * Calculates the minimum translation vector to translate when rectangles are overlapping:
+     * the shortest of the shifts to the right, left, down and up that separate them
+     * (at equal lengths, the first one in that order).
      * @param other Other rectangle that is overlapping
-     * @return minimum vector to translate
+     * @return minimum vector to translate, a new Vector
      */
     public Vector getMinimumTranslationVector(Rectangle other)
     {
-        Vector[] differences = {
-                new Vector(other.rightX - this.leftX, 0), //shift this rectangle to right
-                new Vector(other.leftX - this.rightX, 0), //shift this rectangle to left
-                new Vector(0, other.bottomY - this.topY), //shift this rectangle to down
-                new Vector(0, other.topY - this.bottomY)  //shift this rectangle to up
-        };
+        return getMinimumTranslationVector(other, new Vector());
+    }
 
-        Arrays.sort( differences );
+    /**
+     * Calculates the minimum translation vector into an existing vector, without allocating;
+     * the same result as {@link #getMinimumTranslationVector(Rectangle)}.
+     * Each shift is along one axis, so comparing the absolute shifts gives the same order
+     * as comparing vector lengths, without square roots or sorting.
+     * @param other Other rectangle that is overlapping
+     * @param out vector that receives the minimum translation
+     * @return out
+     */
+    public Vector getMinimumTranslationVector(Rectangle other, Vector out)
+    {
+        double right = other.rightX - this.leftX;  //shift this rectangle to right
+        double left = other.leftX - this.rightX;   //shift this rectangle to left
+        double down = other.bottomY - this.topY;   //shift this rectangle to down
+        double up = other.topY - this.bottomY;     //shift this rectangle to up
+
+        // strict comparisons: at equal lengths the earlier shift wins (right, left, down, up)
+        double x = (Math.abs(left) < Math.abs(right)) ? left : right;
+        double y = (Math.abs(up) < Math.abs(down)) ? up : down;
+        if (Math.abs(y) < Math.abs(x))
+            out.setValues(0, y);
+        else
+            out.setValues(x, 0);
+        return out;
+    }
 
-        return differences[0];
+    /**
+     * Swept collision: when this rectangle moves by (dx, dy), find the first moment it would
+     * overlap other (which doesn't move), so fast objects can't pass through thin ones between updates.
+     * Touching is not overlapping, like in {@link #overlaps(Rectangle)}.
+     * @param dx movement along x
+     * @param dy movement along y
+     * @param other rectangle that doesn't move
+     * @param normal if not null, receives the side of other that is hit, as a vector of length 1 pointing
+     *               away from other (for example (-1,0) for its left side), or (0,0) if they already overlap
+     * @return fraction of the movement (from 0 to 1) before they overlap: 0 if they already overlap,
+     *         or Double.POSITIVE_INFINITY if they don't overlap during the movement
+     */
+    public double getTimeOfImpact(double dx, double dy, Rectangle other, Vector normal)
+    {
+        // times at which the rectangles start and stop overlapping along each axis
+        double entryX, exitX, entryY, exitY;
+        if (dx > 0)
+        {
+            entryX = (other.leftX - this.rightX) / dx;
+            exitX = (other.rightX - this.leftX) / dx;
+        }
+        else if (dx < 0)
+        {
+            entryX = (other.rightX - this.leftX) / dx;
+            exitX = (other.leftX - this.rightX) / dx;
+        }
+        else if (this.rightX > other.leftX && other.rightX > this.leftX)
+        {
+            entryX = Double.NEGATIVE_INFINITY;
+            exitX = Double.POSITIVE_INFINITY;
+        }
+        else
+            return Double.POSITIVE_INFINITY;
+
+        if (dy > 0)
+        {
+            entryY = (other.topY - this.bottomY) / dy;
+            exitY = (other.bottomY - this.topY) / dy;
+        }
+        else if (dy < 0)
+        {
+            entryY = (other.bottomY - this.topY) / dy;
+            exitY = (other.topY - this.bottomY) / dy;
+        }
+        else if (this.bottomY > other.topY && other.bottomY > this.topY)
+        {
+            entryY = Double.NEGATIVE_INFINITY;
+            exitY = Double.POSITIVE_INFINITY;
+        }
+        else
+            return Double.POSITIVE_INFINITY;
+
+        // they overlap while they overlap along both axes
+        double entry = Math.max(entryX, entryY);
+        double exit = Math.min(exitX, exitY);
+        if (entry >= exit || entry >= 1 || exit <= 0)
+            return Double.POSITIVE_INFINITY;
+
+        if (entry < 0)
+        {
+            if (normal != null)
+                normal.setValues(0, 0);
+            return 0;
+        }
+        if (normal != null)
+        {
+            if (entryX >= entryY)
+                normal.setValues(dx > 0 ? -1 : 1, 0);
+            else
+                normal.setValues(0, dy > 0 ? -1 : 1);
+        }
+        return entry;
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,5 @@
 package Engine.Tools;
 
-import com.sun.source.tree.BreakTree;
-
 /**
  * A two-dimensional vector (x,y).
  */
@@ -17,6 +15,17 @@ public class Vector implements Comparable<Vector>
      */
     public double y;
 
+    /**
+     * Shared pool of vectors, for temporary vectors in code that runs every frame;
+     * see {@link #obtain(double, double)} and {@link #free()}.
+     */
+    public static final Pool<Vector> pool = new Pool<Vector>(Vector::new, v -> v.setValues(0, 0), 1024);
+
+    /**
+     * true while this vector is out of {@link #pool} (from {@link #obtain(double, double)} and not freed yet)
+     */
+    public boolean pooled;
+
     /**
      * Initializes vector coordinates to (0,0).
      */
@@ -112,10 +121,20 @@ public class Vector implements Comparable<Vector>
      */
     public void setLength(double length)
     {
-        double angleDeg = this.getAngle();
-        double angleRad = Math.toRadians( angleDeg );
-        this.x = length * Math.cos(angleRad);
-        this.y = length * Math.sin(angleRad);
+        double currentLength = this.getLength();
+
+        // the zero vector has angle 0, so it grows along the x-axis
+        if (currentLength == 0)
+        {
+            this.x = length;
+            this.y = 0;
+            return;
+        }
+
+        // scaling keeps the angle; no need for trigonometry
+        double scale = length / currentLength;
+        this.x *= scale;
+        this.y *= scale;
     }
 
     /**
@@ -149,10 +168,36 @@ public class Vector implements Comparable<Vector>
         return Double.compare(this.getLength(), other.getLength());
     }
 
+    /**
+     * Retrieve a vector from {@link #pool} (or a new one if the pool is empty) and set its coordinates.
+     * Give it back with {@link #free()} when done.
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @return a vector with coordinates (x,y)
+     */
+    public static Vector obtain(double x, double y)
+    {
+        Vector v = pool.acquire();
+        v.setValues(x, y);
+        v.pooled = true;
+        return v;
+    }
+
+    /**
+     * Give this vector back to {@link #pool} if it came from {@link #obtain(double, double)};
+     * it must not be used afterwards. Freeing it again does nothing.
+     */
+    public void free()
+    {
+        if (!pooled)
+            return;
+        pooled = false;
+        pool.release(this);
+    }
+
     public static double calcDur(double dx, double dy, int speed){
         // 1 = 0.33      2 = 0.5    3 = 0.7
-        Vector v = new Vector(dx,dy);
-        double len = v.getLength();
+        double len = Math.sqrt(dx * dx + dy * dy);
 
         switch (speed){
             case 1 -> { return len / 3.3;}
@@ -165,7 +210,9 @@ public class Vector implements Comparable<Vector>
     public double getDistance(Vector other){
 
 
-        return Math.sqrt(Math.pow((other.x - this.x),2) + Math.pow((other.y - this.y),2));
+        double dx = other.x - this.x;
+        double dy = other.y - this.y;
+        return Math.sqrt(dx * dx + dy * dy);
 
     }
 
@@ -0,0 +1,73 @@
+package Benchmarks;
+
+import Engine.Entites.Sprites.Action;
+import Engine.Entites.Sprites.ActionProgram;
+import Engine.Entites.Sprites.Sprite;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  entityCount sprites, each following its own forever(sequence(move, delay, rotate, move)) path,
+ *  advanced by one game loop update: as the Action tree itself, and compiled into an {@link ActionProgram}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ActionBenchmark
+{
+    @Param({"100", "1000", "10000"})
+    public int entityCount;
+
+    private Sprite[] sprites;
+    private Action[] actions;
+    private Sprite[] compiledSprites;
+    private Action[] compiledActions;
+
+    @Setup
+    public void setup()
+    {
+        sprites = new Sprite[entityCount];
+        actions = new Action[entityCount];
+        compiledSprites = new Sprite[entityCount];
+        compiledActions = new Action[entityCount];
+        ActionProgram program = ActionProgram.compile(path());
+        for (int i = 0; i < entityCount; i++)
+        {
+            sprites[i] = new Sprite();
+            actions[i] = path();
+            compiledSprites[i] = new Sprite();
+            compiledActions[i] = program.newAction();
+        }
+    }
+
+    private static Action path()
+    {
+        return Action.foreverMetaAct(
+                Action.sequenceMetaAct(
+                        Action.moveByAct(100, 0, 1),
+                        Action.delay(0.5),
+                        Action.rotateByAct(90, 0.25),
+                        Action.moveByAct(0, 100, 1)));
+    }
+
+    @Benchmark
+    public Sprite[] sequenceMetaAct()
+    {
+        for (int i = 0; i < entityCount; i++)
+            actions[i].apply(sprites[i], 1 / 60.0);
+        return sprites;
+    }
+
+    @Benchmark
+    public Sprite[] compiled()
+    {
+        for (int i = 0; i < entityCount; i++)
+            compiledActions[i].apply(compiledSprites[i], 1 / 60.0);
+        return compiledSprites;
+    }
+}
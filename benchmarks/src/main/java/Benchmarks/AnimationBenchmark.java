@@ -0,0 +1,60 @@
+package Benchmarks;
+
+import Engine.Entites.Sprites.Animation;
+import Engine.Entites.Sprites.Texture;
+import Engine.Tools.Rectangle;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Animation.update and Animation.getCurrentTexture for entityCount looping animations
+ *  (16 frames each, sharing one list of textures like clones do).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnimationBenchmark
+{
+    @Param({"100", "1000", "10000"})
+    public int entityCount;
+
+    private Animation[] animations;
+
+    @Setup
+    public void setup()
+    {
+        // no image needed to pick frames
+        Animation template = new Animation();
+        for (int i = 0; i < 16; i++)
+        {
+            Texture tex = new Texture();
+            tex.region = new Rectangle(i * 32, 0, 32, 32);
+            template.textureList.add(tex);
+        }
+        template.frameDuration = 0.1;
+        template.loop = true;
+
+        animations = new Animation[entityCount];
+        for (int i = 0; i < entityCount; i++)
+        {
+            animations[i] = template.clone();
+            animations[i].elapsedTime = (i % 16) * 0.1;
+        }
+    }
+
+    @Benchmark
+    public void updateAndGetCurrentTexture(Blackhole bh)
+    {
+        for (Animation a : animations)
+        {
+            a.update(1 / 60.0);
+            bh.consume(a.getCurrentTexture());
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package Benchmarks;
+
+import Engine.Entites.ContactList;
+import Engine.Entites.ContactSolver;
+import Engine.Entites.SpatialHash;
+import Engine.Entites.Sprites.Sprite;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  A crowd of entityCount troops arriving at a static tower, many of them overlapping each other or the tower,
+ *  separated until nothing overlaps (or {@link #MAXIMUM_ROUNDS} is reached): by resolving the overlapping pairs
+ *  one at a time (like preventOverlap), and by a ContactSolver. Both gather the pairs again from the grid
+ *  after each round, since pushing troops apart can make new overlaps.
+ *  <p>
+ *  After each iteration the overlaps left are printed, and a troop left inside the tower fails the run.
+ *  Resolving pairs one at a time only moves one sprite of each pair, so a troop caught between two others
+ *  is pushed back and forth and some overlaps between troops can remain; the solver separates all of them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContactBenchmark
+{
+    @Param({"20", "200", "2000"})
+    public int entityCount;
+
+    /**
+     * at most this many rounds of gathering pairs and separating them
+     */
+    public static final int MAXIMUM_ROUNDS = 100;
+
+    private Sprite tower;
+    private Sprite[] troops;
+    private double[] startX, startY;
+    private SpatialHash grid;
+    private ContactList contacts;
+    private ContactSolver solver;
+
+    /**
+     * rounds and overlap checks of the last separation
+     */
+    public int roundCount;
+    public long checkCount;
+
+    @Setup(Level.Iteration)
+    public void setup()
+    {
+        tower = new Sprite();
+        tower.setSize(64, 64);
+        tower.setPosition(1000, 1000);
+        tower.noOverLap = true;
+
+        // a disc around the tower, a sixth of it covered by troops
+        Random random = new Random(42);
+        double radius = Math.sqrt(entityCount * 400 * 6 / Math.PI) + 48;
+        troops = new Sprite[entityCount];
+        startX = new double[entityCount];
+        startY = new double[entityCount];
+        for (int i = 0; i < entityCount; i++)
+        {
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double distance = radius * Math.sqrt(random.nextDouble());
+            troops[i] = new Sprite();
+            troops[i].setSize(20, 20);
+            startX[i] = 1032 + Math.cos(angle) * distance - 10;
+            startY[i] = 1032 + Math.sin(angle) * distance - 10;
+        }
+        grid = new SpatialHash(64);
+        contacts = new ContactList();
+        solver = new ContactSolver();
+    }
+
+    /**
+     * Print what the last separation left, and fail if it left a troop inside the tower.
+     */
+    @TearDown(Level.Iteration)
+    public void check(BenchmarkParams params)
+    {
+        int inTower = 0;
+        for (Sprite s : troops)
+            if (s.overlaps(tower))
+                inTower++;
+        int overlaps = countOverlaps();
+        System.out.println(params.getBenchmark() + " (" + entityCount + "): " + roundCount + " rounds, "
+                + checkCount + " checks, " + overlaps + " overlapping pairs left");
+        if (inTower > 0)
+            throw new IllegalStateException(inTower + " troops left inside the tower");
+    }
+
+    /**
+     * Put every troop back at its place in the crowd, and forget the contacts of the previous separation.
+     */
+    private void restore()
+    {
+        for (int i = 0; i < troops.length; i++)
+            troops[i].setPosition(startX[i], startY[i]);
+        solver.reset();
+        roundCount = 0;
+        checkCount = 0;
+    }
+
+    /**
+     * Place tower and troops in the grid as they are now.
+     */
+    private void fillGrid()
+    {
+        grid.clear();
+        grid.add(tower);
+        for (Sprite s : troops)
+            grid.add(s);
+        grid.update();
+    }
+
+    @Benchmark
+    public int pairwise()
+    {
+        restore();
+        while (roundCount < MAXIMUM_ROUNDS)
+        {
+            fillGrid();
+            contacts.clear();
+            // the static tower second, since only the first sprite of a pair is moved
+            grid.forEachOverlappingPair((a, b) ->
+            {
+                if (a.noOverLap)
+                    contacts.add(b, a);
+                else
+                    contacts.add(a, b);
+            });
+            if (contacts.size() == 0)
+                break;
+            // game code resolving pairs one by one, checking again while something still moved
+            int passes = 0;
+            int resolved;
+            do
+            {
+                resolved = contacts.resolve();
+                checkCount += contacts.size();
+                passes++;
+            }
+            while (resolved > 0 && passes < 10);
+            roundCount++;
+        }
+        return roundCount;
+    }
+
+    @Benchmark
+    public int solver()
+    {
+        restore();
+        while (roundCount < MAXIMUM_ROUNDS)
+        {
+            fillGrid();
+            solver.clear();
+            grid.forEachOverlappingPair(solver);
+            if (solver.size() == 0)
+                break;
+            solver.solve();
+            checkCount += solver.getCheckCount();
+            roundCount++;
+        }
+        return roundCount;
+    }
+
+    /**
+     * @return the number of pairs of sprites (troops and tower) that overlap right now
+     */
+    public int countOverlaps()
+    {
+        int count = 0;
+        for (int i = 0; i < troops.length; i++)
+        {
+            if (troops[i].overlaps(tower))
+                count++;
+            for (int j = i + 1; j < troops.length; j++)
+                if (troops[i].overlaps(troops[j]))
+                    count++;
+        }
+        return count;
+    }
+}
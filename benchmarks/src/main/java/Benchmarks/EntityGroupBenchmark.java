@@ -0,0 +1,56 @@
+package Benchmarks;
+
+import Engine.Entites.EntityGroup;
+import Engine.Entites.Sprites.Physics;
+import Engine.Entites.Sprites.Sprite;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  One game loop update of an EntityGroup full of moving sprites,
+ *  sequential and split over the fork/join pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntityGroupBenchmark
+{
+    @Param({"100", "1000", "10000"})
+    public int entityCount;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private EntityGroup group;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(42);
+        group = new EntityGroup();
+        group.parallel = parallel;
+        for (int i = 0; i < entityCount; i++)
+        {
+            Sprite s = new Sprite();
+            s.setSize(32, 32);
+            s.setPosition(random.nextDouble() * 438, random.nextDouble() * 750);
+            Physics p = new Physics(100, 200, 20);
+            p.velocity.setValues(random.nextDouble() * 100 - 50, random.nextDouble() * 100 - 50);
+            s.setPhysics(p);
+            group.add(s);
+        }
+    }
+
+    @Benchmark
+    public EntityGroup update()
+    {
+        group.update(1 / 60.0);
+        return group;
+    }
+}
@@ -0,0 +1,90 @@
+package Benchmarks;
+
+import Engine.Tools.Input;
+
+import javafx.scene.input.KeyCode;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Input.update with entityCount key events queued since the previous update,
+ *  followed by a key query for each of them.
+ *  There are fewer keys than events for large counts, so keys repeat.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InputBenchmark
+{
+    @Param({"10", "100", "1000"})
+    public int entityCount;
+
+    private Input input;
+    private KeyCode[] keys;
+    private String[] keyNames;
+
+    @Setup
+    public void setup()
+    {
+        input = new Input();
+        KeyCode[] all = KeyCode.values();
+        keys = new KeyCode[entityCount];
+        keyNames = new String[entityCount];
+        for (int i = 0; i < entityCount; i++)
+        {
+            keys[i] = all[i % all.length];
+            keyNames[i] = keys[i].toString();
+        }
+    }
+
+    @Benchmark
+    public int pressUpdateRelease()
+    {
+        int pressed = 0;
+
+        for (KeyCode key : keys)
+            input.pressKey(key);
+        input.update();
+        for (KeyCode key : keys)
+            if (input.isKeyJustPressed(key))
+                pressed++;
+
+        for (KeyCode key : keys)
+            input.releaseKey(key);
+        input.update();
+        for (KeyCode key : keys)
+            if (input.isKeyStillPressed(key))
+                pressed--;
+
+        return pressed;
+    }
+
+    /**
+     *  Same as {@link #pressUpdateRelease()}, querying by key name.
+     */
+    @Benchmark
+    public int pressUpdateReleaseByName()
+    {
+        int pressed = 0;
+
+        for (KeyCode key : keys)
+            input.pressKey(key);
+        input.update();
+        for (String name : keyNames)
+            if (input.isKeyJustPressed(name))
+                pressed++;
+
+        for (KeyCode key : keys)
+            input.releaseKey(key);
+        input.update();
+        for (String name : keyNames)
+            if (input.isKeyStillPressed(name))
+                pressed--;
+
+        return pressed;
+    }
+}
@@ -0,0 +1,122 @@
+package Benchmarks;
+
+import Engine.Entites.EntityGroup;
+import Engine.Entites.NavigationGrid;
+import Engine.Entites.Sprites.Action;
+import Engine.Entites.Sprites.Sprite;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  entityCount units heading for the same tower across a river with two bridges, for one update:
+ *  following a shared flow field (one lookup per unit), and each unit searching its own path
+ *  (a breadth-first search over the same grid, as a per-unit pathfinder would).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NavigationBenchmark
+{
+    @Param({"100", "1000", "10000"})
+    public int entityCount;
+
+    private NavigationGrid grid;
+    private Sprite tower;
+    private Sprite[] units;
+    private Action[] actions;
+    private int[] queue, distance;
+
+    @Setup
+    public void setup()
+    {
+        EntityGroup solids = new EntityGroup();
+        solids.add(obstacle(0, 360, 150, 32));
+        solids.add(obstacle(180, 360, 100, 32));
+        solids.add(obstacle(310, 360, 128, 32));
+        tower = obstacle(190, 60, 64, 64);
+        solids.add(tower);
+        solids.flush();
+        grid = new NavigationGrid(438, 750, 16);
+        grid.rebuild(solids);
+
+        Random random = new Random(42);
+        units = new Sprite[entityCount];
+        actions = new Action[entityCount];
+        for (int i = 0; i < entityCount; i++)
+        {
+            units[i] = new Sprite();
+            units[i].setSize(12, 12);
+            units[i].setPosition(random.nextDouble() * 420, 450 + random.nextDouble() * 280);
+            // too slow to arrive during the measurement
+            actions[i] = Action.followFlowField(grid.getFlowField(tower), 0.001);
+        }
+        queue = new int[grid.columns * grid.rows];
+        distance = new int[grid.columns * grid.rows];
+    }
+
+    private static Sprite obstacle(double x, double y, int width, int height)
+    {
+        Sprite s = new Sprite();
+        s.setSize(width, height);
+        s.setPosition(x, y);
+        return s;
+    }
+
+    @Benchmark
+    public Sprite[] flowField()
+    {
+        for (int i = 0; i < entityCount; i++)
+            actions[i].apply(units[i], 1 / 60.0);
+        return units;
+    }
+
+    @Benchmark
+    public int perUnitSearch()
+    {
+        int columns = grid.columns;
+        int goal = grid.row(tower.position.y + 72) * columns + grid.column(tower.position.x + 32);
+        int total = 0;
+        for (Sprite s : units)
+        {
+            // breadth-first search from the unit until the cell below the tower is found
+            Arrays.fill(distance, -1);
+            int start = grid.row(s.position.y) * columns + grid.column(s.position.x);
+            int head = 0, tail = 0;
+            queue[tail++] = start;
+            distance[start] = 0;
+            while (head < tail)
+            {
+                int cell = queue[head++];
+                if (cell == goal)
+                    break;
+                int c = cell % columns, r = cell / columns;
+                tail = visit(c + 1, r, cell, tail);
+                tail = visit(c - 1, r, cell, tail);
+                tail = visit(c, r + 1, cell, tail);
+                tail = visit(c, r - 1, cell, tail);
+            }
+            total += distance[goal];
+        }
+        return total;
+    }
+
+    private int visit(int c, int r, int from, int tail)
+    {
+        if (grid.isBlocked(c, r))
+            return tail;
+        int cell = r * grid.columns + c;
+        if (distance[cell] < 0)
+        {
+            distance[cell] = distance[from] + 1;
+            queue[tail++] = cell;
+        }
+        return tail;
+    }
+}
@@ -0,0 +1,157 @@
+package Benchmarks;
+
+import Engine.Entites.EntityGroup;
+import Engine.Entites.Sprites.Physics;
+import Engine.Entites.Sprites.Sprite;
+import Engine.Tools.Vector;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Physics.update over many bodies, compared with the previous implementation
+ *  (speed clamping through Vector.setLength, which went through atan2/cos/sin).
+ *  Also sprites moving among 8 towers, where one in ten uses continuous collision (Physics.continuousCollision).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PhysicsBenchmark
+{
+    @Param({"100", "1000", "10000"})
+    public int entityCount;
+
+    private Physics[] bodies;
+    private Sprite[] sprites;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(42);
+        bodies = new Physics[entityCount];
+        for (int i = 0; i < entityCount; i++)
+        {
+            bodies[i] = new Physics(100, 200, 20);
+            bodies[i].velocity.setValues(random.nextDouble() * 400 - 200, random.nextDouble() * 400 - 200);
+        }
+
+        EntityGroup towers = new EntityGroup();
+        for (int i = 0; i < 8; i++)
+        {
+            Sprite tower = new Sprite();
+            tower.setSize(64, 64);
+            tower.setPosition((i % 4) * 100 + 20, (i / 4) * 500 + 100);
+            towers.add(tower);
+        }
+        towers.flush();
+        sprites = new Sprite[entityCount];
+        for (int i = 0; i < entityCount; i++)
+        {
+            Sprite s = new Sprite();
+            s.setSize(8, 8);
+            s.setPosition(random.nextDouble() * 438, random.nextDouble() * 750);
+            Physics p = new Physics(0, 2000, 0);
+            p.velocity.setValues(random.nextDouble() * 400 - 200, random.nextDouble() * 400 - 200);
+            if (i % 10 == 0)
+            {
+                p.velocity.multiply(10);
+                p.continuousCollision = true;
+                p.obstacles = towers;
+            }
+            s.setPhysics(p);
+            sprites[i] = s;
+        }
+    }
+
+    @Benchmark
+    public Sprite[] spritesWithFastBodies()
+    {
+        for (Sprite s : sprites)
+        {
+            s.update(1 / 60.0);
+            // keep everyone moving: turn back at the edges of the arena and away from what they hit
+            Physics p = s.physics;
+            if (s.position.x < 0 || s.position.x > 438)
+                p.velocity.x = -p.velocity.x;
+            if (s.position.y < 0 || s.position.y > 750)
+                p.velocity.y = -p.velocity.y;
+            if (p.hitSprite != null)
+            {
+                if (p.hitNormal.x != 0)
+                    p.velocity.x = -p.velocity.x;
+                else
+                    p.velocity.y = -p.velocity.y;
+            }
+        }
+        return sprites;
+    }
+
+    @Benchmark
+    public Physics[] update()
+    {
+        for (Physics p : bodies)
+        {
+            p.accelerateAtAngle(30);
+            p.update(1 / 60.0);
+        }
+        return bodies;
+    }
+
+    @Benchmark
+    public Physics[] legacyUpdate()
+    {
+        for (Physics p : bodies)
+        {
+            legacyAccelerateBy(p, p.accelerationValue, 30);
+            legacyUpdate(p, 1 / 60.0);
+        }
+        return bodies;
+    }
+
+    /**
+     * Physics.accelerateBy as it was before it stopped allocating.
+     */
+    private static void legacyAccelerateBy(Physics p, double amount, double angle)
+    {
+        Vector a = new Vector();
+        legacySetLength(a, amount);
+        a.setAngle(angle);
+        p.acceleration.addVector(a);
+    }
+
+    /**
+     * Physics.update as it was before it stopped using angles.
+     */
+    private static void legacyUpdate(Physics p, double dt)
+    {
+        p.velocity.addToCoordinates(p.acceleration.x * dt, p.acceleration.y * dt);
+
+        double speed = p.velocity.getLength();
+        if (p.acceleration.getLength() < 0.001)
+            speed -= p.decelerationValue * dt;
+        if (speed < 0)
+            speed = 0;
+        if (speed > p.maximumSpeed)
+            speed = p.maximumSpeed;
+
+        legacySetLength(p.velocity, speed);
+
+        p.position.addToCoordinates(p.velocity.x * dt, p.velocity.y * dt);
+        p.acceleration.setValues(0, 0);
+    }
+
+    /**
+     * Vector.setLength as it was before it scaled the coordinates directly.
+     */
+    private static void legacySetLength(Vector v, double length)
+    {
+        double angleRad = Math.toRadians(v.getAngle());
+        v.x = length * Math.cos(angleRad);
+        v.y = length * Math.sin(angleRad);
+    }
+}
@@ -0,0 +1,77 @@
+package Benchmarks;
+
+import Engine.Tools.Rectangle;
+import Engine.Tools.Vector;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Narrow-phase collision: Rectangle.overlaps and Rectangle.getMinimumTranslationVector
+ *  (a new Vector per call, and into one reused Vector) over entityCount pairs of (mostly overlapping) rectangles.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RectangleBenchmark
+{
+    @Param({"100", "1000", "10000"})
+    public int entityCount;
+
+    private Rectangle[] first;
+    private Rectangle[] second;
+    private final Vector out = new Vector();
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(42);
+        first = new Rectangle[entityCount];
+        second = new Rectangle[entityCount];
+        for (int i = 0; i < entityCount; i++)
+        {
+            double x = random.nextDouble() * 438;
+            double y = random.nextDouble() * 750;
+            first[i] = new Rectangle(x, y, 32, 32);
+            second[i] = new Rectangle(x + random.nextDouble() * 40 - 20, y + random.nextDouble() * 40 - 20, 32, 32);
+        }
+    }
+
+    @Benchmark
+    public int overlaps()
+    {
+        int count = 0;
+        for (int i = 0; i < entityCount; i++)
+            if (first[i].overlaps(second[i]))
+                count++;
+        return count;
+    }
+
+    @Benchmark
+    public void minimumTranslationVector(Blackhole bh)
+    {
+        for (int i = 0; i < entityCount; i++)
+        {
+            Vector mtv = first[i].getMinimumTranslationVector(second[i]);
+            bh.consume(mtv);
+        }
+    }
+
+    @Benchmark
+    public double minimumTranslationVectorInto()
+    {
+        double sum = 0;
+        for (int i = 0; i < entityCount; i++)
+        {
+            Vector mtv = first[i].getMinimumTranslationVector(second[i], out);
+            sum += mtv.x + mtv.y;
+        }
+        return sum;
+    }
+}
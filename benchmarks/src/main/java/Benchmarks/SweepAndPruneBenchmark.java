@@ -0,0 +1,92 @@
+package Benchmarks;
+
+import Engine.Entites.SpatialHash;
+import Engine.Entites.SweepAndPrune;
+import Engine.Entites.Sprites.Sprite;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Broadphase: finding all overlapping pairs among entityCount moving sprites in one update,
+ *  by checking Sprite.overlaps on every pair (brute force) and with a SweepAndPrune.
+ *  Sprites walk back and forth along narrow horizontal lanes, a little every update, like units in an arena.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SweepAndPruneBenchmark
+{
+    @Param({"100", "1000", "10000"})
+    public int entityCount;
+
+    private Sprite[] sprites;
+    private double[] speed;
+    private double arenaWidth;
+    private SweepAndPrune sweepAndPrune;
+    private int overlapCount;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(42);
+        sprites = new Sprite[entityCount];
+        speed = new double[entityCount];
+        // the arena grows with the number of sprites, so each lane stays equally crowded
+        arenaWidth = entityCount * 8;
+        sweepAndPrune = new SweepAndPrune();
+        for (int i = 0; i < entityCount; i++)
+        {
+            Sprite s = new Sprite();
+            s.setSize(32, 32);
+            s.setPosition(random.nextDouble() * arenaWidth, random.nextInt(8) * 50 + random.nextDouble() * 16);
+            sprites[i] = s;
+            speed[i] = random.nextDouble() * 4 - 2;
+            sweepAndPrune.add(s);
+        }
+        sweepAndPrune.update();
+    }
+
+    private void move()
+    {
+        for (int i = 0; i < entityCount; i++)
+        {
+            Sprite s = sprites[i];
+            double x = s.position.x + speed[i];
+            if (x < 0 || x > arenaWidth)
+                speed[i] = -speed[i];
+            s.position.x = x;
+            // a little sideways drift, so pairs also start and stop along y
+            s.position.y += ((i + (int) x) & 1) == 0 ? 0.25 : -0.25;
+        }
+    }
+
+    @Benchmark
+    public int bruteForce()
+    {
+        move();
+        int count = 0;
+        for (int i = 0; i < entityCount; i++)
+            for (int j = i + 1; j < entityCount; j++)
+                if (sprites[i].overlaps(sprites[j]))
+                    count++;
+        return count;
+    }
+
+    @Benchmark
+    public int sweepAndPrune()
+    {
+        move();
+        sweepAndPrune.update();
+        overlapCount = 0;
+        sweepAndPrune.forEachOverlappingPair(countPair);
+        return overlapCount;
+    }
+
+    private final SpatialHash.PairFunction countPair = (a, b) -> overlapCount++;
+}
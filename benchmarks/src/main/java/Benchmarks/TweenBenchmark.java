@@ -0,0 +1,86 @@
+package Benchmarks;
+
+import Engine.Entites.Sprites.Action;
+import Engine.Entites.Sprites.Easing;
+import Engine.Entites.Sprites.Sprite;
+import Engine.Entites.Sprites.TweenBatch;
+import Engine.Entites.Sprites.TweenProperty;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  entityCount sprites, each tweening its x-coordinate, advanced by one game loop update:
+ *  as one tween Action per sprite, and in a TweenBatch.
+ *  Also the cost of evaluating an elastic curve from its lookup table versus computing it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TweenBenchmark
+{
+    @Param({"1000", "10000"})
+    public int entityCount;
+
+    private Sprite[] sprites;
+    private Action[] actions;
+    private TweenBatch batch;
+    private double[] times;
+
+    @Setup
+    public void setup()
+    {
+        sprites = new Sprite[entityCount];
+        actions = new Action[entityCount];
+        batch = new TweenBatch();
+        times = new double[entityCount];
+        for (int i = 0; i < entityCount; i++)
+        {
+            sprites[i] = new Sprite();
+            // long enough to never finish during the measurement
+            actions[i] = Action.tweenTo(TweenProperty.X, 1000, 1e9, Easing.QUAD_IN_OUT);
+            batch.tweenTo(sprites[i], TweenProperty.Y, 1000, 1e9, Easing.QUAD_IN_OUT);
+            times[i] = (double) i / entityCount;
+        }
+    }
+
+    @Benchmark
+    public Sprite[] actionTweens()
+    {
+        for (int i = 0; i < entityCount; i++)
+            actions[i].apply(sprites[i], 1 / 60.0);
+        return sprites;
+    }
+
+    @Benchmark
+    public TweenBatch batchTweens()
+    {
+        batch.update(1 / 60.0);
+        return batch;
+    }
+
+    @Benchmark
+    public double elasticTable()
+    {
+        double sum = 0;
+        for (int i = 0; i < entityCount; i++)
+            sum += Easing.ELASTIC_OUT.apply(times[i]);
+        return sum;
+    }
+
+    @Benchmark
+    public double elasticComputed()
+    {
+        double sum = 0;
+        for (int i = 0; i < entityCount; i++)
+        {
+            double t = times[i];
+            sum += Math.pow(2, -10 * t) * Math.sin((t * 10 - 0.75) * (2 * Math.PI / 3)) + 1;
+        }
+        return sum;
+    }
+}